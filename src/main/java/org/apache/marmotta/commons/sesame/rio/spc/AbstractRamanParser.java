@@ -6,14 +6,23 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.nio.DoubleBuffer;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
 import java.util.Vector;
+import java.util.regex.Pattern;
 
 import net.fortuna.ical4j.util.CompatibilityHints;
 
@@ -24,8 +33,10 @@ import org.openrdf.model.URI;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RioSetting;
 import org.openrdf.rio.helpers.RDFParserBase;
 import org.rosuda.REngine.REXPDouble;
 import org.rosuda.REngine.REXPGenericVector;
@@ -65,11 +76,26 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 	  protected static String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
 	  protected static String XSD_DOUBLE = "http://www.w3.org/2001/XMLSchema#double";
 	  protected static String XSD_DATE = "http://www.w3.org/2001/XMLSchema#dateTime";
+	  protected static String XSD_INT = "http://www.w3.org/2001/XMLSchema#int";
+	  protected static String XSD_LONG = "http://www.w3.org/2001/XMLSchema#long";
 	  protected static String MIME_TYPE_VALUE = "application/x-pkcs7-certificates";
+	  protected static String JCAMP_MIME_TYPE_VALUE = "chemical/x-jcamp-dx";
 	  protected static final String NS_RDF    = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+	  protected static final String NS_FOAF   = "http://xmlns.com/foaf/0.1/";
+	  protected static final String NS_PROV   = "http://www.w3.org/ns/prov#";
 	  //protected static final String NS_SPC  = "http://www.chimie-analytique.u-psud.fr/2015/inVivoRaman#";
 	  protected static final String NS_SPC = "http://modalmi.u-psud.fr/2015/invivo#";
 	  private static Logger log = LoggerFactory.getLogger(AbstractRamanParser.class);
+	  //lexical form of a finite xsd:double, unlike Double.parseDouble it rejects "Infinity", "1d", "2f" or hex floats
+	  private static final Pattern XSD_DOUBLE_LEXICAL = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][+-]?\\d+)?");
+	  
+	  //spectral data captured while traversing the REXP object of the current file
+	  private double [] wavelength;
+	  private DoubleBuffer intensity;
+	  //scratch files of the current file, for intensities too large for the heap
+	  private ScratchSpace scratch;
+	  //skolem IRIs of the property nodes of the current file
+	  private final SkolemIris skolemIris = new SkolemIris();
 	  
 	  
 	  /**
@@ -117,6 +143,30 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 	      return SpcFormat.FORMAT;
 	  }
 
+	 @Override
+	  public Collection<RioSetting<?>> getSupportedSettings() {
+		  Collection<RioSetting<?>> result = new HashSet<RioSetting<?>>(super.getSupportedSettings());
+		  result.add(SpcParserSettings.PEAK_DETECTION);
+		  result.add(SpcParserSettings.PEAK_MIN_HEIGHT);
+		  result.add(SpcParserSettings.PEAK_MIN_PROMINENCE);
+		  result.add(SpcParserSettings.PEAK_SMOOTHING_WINDOW);
+		  result.add(SpcParserSettings.SIMILARITY_INDEX_DIR);
+		  result.add(SpcParserSettings.AGGREGATE_FILE);
+		  result.add(SpcParserSettings.PREVIEW_DIR);
+		  result.add(SpcParserSettings.PREVIEW_BASE_URL);
+		  result.add(SpcParserSettings.ARROW_EXPORT_DIR);
+		  result.add(SpcParserSettings.ARROW_MAX_FILE_BYTES);
+		  result.add(SpcParserSettings.ARROW_MAX_FILE_MILLIS);
+		  result.add(SpcParserSettings.ARROW_CATALOG_ONLY);
+		  result.add(SpcParserSettings.MEMORY_BUDGET_BYTES);
+		  result.add(SpcParserSettings.MEMORY_PER_DATA_BYTE);
+		  result.add(SpcParserSettings.SPILL_THRESHOLD_BYTES);
+		  result.add(SpcParserSettings.SCRATCH_DIR);
+		  result.add(SpcParserSettings.SKOLEM_IRIS);
+		  result.add(SpcParserSettings.PROVENANCE);
+		  return result;
+	  }
+
 		/**
 		 * Converting date time formatted dd.MM.yyyy hh:mm to YYYY-MM-DDThh:mm:ss format </br>
 		 * 
@@ -145,11 +195,13 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 		   * Then, loading the file to REXP object. Traversing the object to find the reasonable values </br>
 		   * Extracting file name to collect the information of volunteer ID, day experiment and skin specification </br>
 		   * Consequently, constructing these values as nodes and adding them to the database </br>
+		   * Then, deriving features of the spectral data (peaks) and adding them to the database </br>
 		   * Finally, Deleting the temporary file </br>  
 		   * 
 		   * {@code AbstractRamanParser#createMimeTypeNode(URI, String, Object, String)} </br>
 		   * {@code AbstractRamanParser#createSPCNode(URI, String, Object, String, URI)} </br>
 		   * {@code AbstractRamanParser#extractFileName(URI, String)} </br>
+		   * {@code AbstractRamanParser#processSpectrum(URI, String, RamanSpectrum)} </br>
 		   * 
 		   *
 		   * @param in      The InputStream from which to read the data.
@@ -166,23 +218,21 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 				  throws IOException, RDFParseException, RDFHandlerException {
 
 			  	Preconditions.checkNotNull(baseURI);
+			  	
+			  	ParseProvenance provenance = null;
+			  	if (getParserConfig().get(SpcParserSettings.PROVENANCE)){
+			  		provenance = new ParseProvenance();
+			  		in = provenance.wrap(in);
+			  	}
 			      
 			    log.info("baseURI ", baseURI);
 		      
 		      	System.out.println();
 		      
-		      	int index = baseURI.indexOf("resource") + 9;
-		      	
-		      	String uriNormalization = baseURI.substring(0, index);
-		      	
-		      	String fileName = baseURI.substring(index, baseURI.length());
-		      	
-		      	log.info("URI after normalization ", uriNormalization);
+		      	String fileName = normalizeBaseURI(baseURI);
 		      	
 		      	log.info("call SpcParser");
 		      	
-		      	setBaseURI(uriNormalization);
-		      	
 		      	String filePath = null;
 		      	
 		      	String os = System.getProperty("os.name").toLowerCase();
@@ -209,18 +259,36 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 		      	File f2 = new File(f, fileName);
 		      	f2.createNewFile();
 		      	
+		      	//stream to the file, the data is never held as a whole in the heap
 		      	BufferedOutputStream outt = new BufferedOutputStream(new FileOutputStream(f2));
-		      	
-		  		byte[] data =  IOUtils.toByteArray(in);
-		  		outt.write(data);
-		      	outt.close();
+		      	try {
+		      		IOUtils.copy(in, outt);
+		      	} finally {
+		      		outt.close();
+		      	}
+		      	if (provenance != null) provenance.stage("read");
+		          
+		          wavelength = null;
+		          intensity = null;
+		          skolemIris.reset();
+		          
+		          ParseMemoryBudget.Lease lease = null;
+		          scratch = null;
+		          RDFHandler handler = rdfHandler;
 		          
 		          try {
 		          	
-		          	rexp = re.parseAndEval("read.spc(\"" + filePath + "/" +  fileName 
+		          	lease = acquireMemory(f2.length());
+		          	scratch = new ScratchSpace(getScratchDir());
+		          	if (provenance != null) provenance.stage("wait");
+		          	if (provenance != null && handler != null) rdfHandler = provenance.count(handler);
+		          	
+		          	//a local reference, so the R object can be collected as soon as the parse ends
+		          	org.rosuda.REngine.REXP result = re.parseAndEval("read.spc(\"" + filePath + "/" +  fileName 
 		          			+ "\", keys.hdr2data = TRUE, keys.log2data = TRUE)");
+		          	if (provenance != null) provenance.stage("decode");
 						
-		            REXPList rexpList = (REXPList)rexp._attr();
+		            REXPList rexpList = (REXPList)result._attr();
 		            
 		            if (rexpList != null)
 						try {
@@ -228,22 +296,7 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 							//create a node root
 			    	    	//create a random UID for SPC object
 			    	    	URI uri = resolveURI(fileName); //it has format 
-			    	    	URI p_type       = createURI(NS_RDF + "type");
-			    	    	//create an ExperimentalData node
-			    	    	Resource experimentalData_node = createURI(NS_SPC + "ExperimentalData");
-			    	        rdfHandler.handleStatement(createStatement(uri, p_type, experimentalData_node));
-			    	        //create a FileRamanSpectrometer node
-			    	        URI ramanFile_node = createURI(NS_SPC + "FileRamanSpectrometer");
-			    	        rdfHandler.handleStatement(createStatement(uri, p_type, ramanFile_node));
-			    	    	//create an Acquisition node
-			    	        URI acquisition_node = createURI(NS_SPC + "Acquisition");
-			    	        rdfHandler.handleStatement(createStatement(uri, p_type, acquisition_node));
-
-							//createMimeTypeNode(ramanFile_node, "mimeType", "application/x-pkcs7-certificates", "Mime Type");
-			    	        createMimeTypeNode(uri, "mimeType", MIME_TYPE_VALUE, "Mime Type");
-							//insert a node with the value of file name
-							//createSPCNode(ramanFile_node, "filename", fileName, "Raman SPC's filename", createURI(XSD_STRING));
-							createSPCNode(uri, "filename", fileName, "Raman SPC's filename", createURI(XSD_STRING));
+			    	    	createAcquisitionNode(uri, fileName, MIME_TYPE_VALUE);
 							//iterateList(acquisition_node, rexpList.asList());
 			    	        iterateList(uri, rexpList.asList());
 							//insert mime type
@@ -251,30 +304,19 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 							//create nodes from data extracted from file name
 							//extractFileName(acquisition_node, fileName);
 			    	        extractFileName(uri, fileName);
+			    	        checkSkolemIris(fileName);
+			    	        if (provenance != null) provenance.stage("emit");
 			    	        
+			    	        //the values are copied, the R object need not outlive the emission
+			    	        result = null;
+			    	        rexpList = null;
 			    	        
-			    	        // plot silently data on the graph
-			    	        //OK
-			    	        // save the graph as an png to resource dir
-			    	        //OK
-			    	        //String homeDir = System.getProperty("marmotta.home");
-			    	        //String imagePath = homeDir + "/resource/" + fileName.replace(".spc", ".jpg");  
-			    	        // construct an url for the image
-			    	        // add image property for raman file
+			    	        if (wavelength != null && intensity != null)
+			    	        	processSpectrum(uri, fileName, new RamanSpectrum(wavelength, intensity));
+			    	        if (provenance != null) provenance.stage("features");
 			    	        
-
-			    	     /*   
-			    	        
-			    	        //creating a pre-processing data node
-			    	        //describe an url node
-			    	        //point to that node
-			    	        String imageUrl = "http://localhost:8080/resources/508_N_542012_ABINT_2.jpg";
-			    	        URI imgUri = createURI(imageUrl);
-			  	    	    URI imgUriType = createURI("http://xmlns.com/foaf/spec");
-				            rdfHandler.handleStatement(createStatement(uri, imgUriType, imgUri));
-				            
-
-			    	        */
+			    	        if (provenance != null)
+			    	        	createProvenanceNode(uri, provenance, "R");
 			    	        
 							
 						} catch (REXPMismatchException | ParseException e1) {
@@ -290,19 +332,32 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 					} catch (REXPMismatchException e1) {
 						
 						log.error(e1.getMessage());
+					} finally {
+						
+						rdfHandler = handler;
+						if (lease != null) lease.close();
+						if (scratch != null) scratch.close();
+						scratch = null;
+						wavelength = null;
+						intensity = null;
+						
+						//remove this file
+						f2.delete();
+						//remove the temporary directory
+						f.delete();
 					}
 
-		          //remove this file
-		          f2.delete();
-		          //remove the temporary directory
-		          f.delete();
-
 		  }
 
 
 			/**
 		   * Parses the data from the supplied Reader, using the supplied baseURI to
 		   * resolve any relative URI references.
+		   * 
+		   * The data is a JCAMP-DX spectrum, decoded in a single pass by {@link JcampDxReader} </br>
+		   * Its labelled data records, wavelength and intensity are added as for an SPC file, </br>
+		   * so both formats produce the same graph shape </br>
+		   * A peak table is added as its lists of peak positions and heights, without derived features </br>
 		   *
 		   * @param reader  The Reader from which to read the data.
 		   * @param baseURI The URI associated with the data in the InputStream.
@@ -319,6 +374,241 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 			  
 		      Preconditions.checkNotNull(baseURI);
 		      
+		      ParseProvenance provenance = null;
+		      if (getParserConfig().get(SpcParserSettings.PROVENANCE)){
+		    	  provenance = new ParseProvenance();
+		    	  reader = provenance.wrap(reader);
+		      }
+		      
+		      String fileName = normalizeBaseURI(baseURI);
+		      
+		      log.info("call JCAMP-DX parser");
+		      
+		      wavelength = null;
+		      intensity = null;
+		      skolemIris.reset();
+		      
+		      JcampDxReader jcamp = new JcampDxReader(reader);
+		      jcamp.readHeader();
+		      if (provenance != null) provenance.stage("read");
+		      
+		      //lease before decoding, from the declared number of points or, without it, the whole budget
+		      int points = jcamp.getDeclaredPoints();
+		      ParseMemoryBudget.Lease lease = points >= 0 ? acquireMemory(4L * points) 
+		    		  : acquireMemory(getParserConfig().get(SpcParserSettings.MEMORY_BUDGET_BYTES) 
+		    				  / getParserConfig().get(SpcParserSettings.MEMORY_PER_DATA_BYTE));
+		      if (provenance != null) provenance.stage("wait");
+		      
+		      RDFHandler handler = rdfHandler;
+		      scratch = null;
+		      try {
+		    	  jcamp.readData();
+		    	  if (provenance != null) provenance.stage("decode");
+		    	  //the estimate is replaced by what the emission of the decoded arrays will hold
+		    	  if (!lease.resize(4L * jcamp.getY().length * getParserConfig().get(SpcParserSettings.MEMORY_PER_DATA_BYTE))){
+		    		  //waiting while holding a lease could deadlock with a parse doing the same, wait with nothing leased
+		    		  lease.close();
+		    		  lease = acquireMemory(4L * jcamp.getY().length);
+		    	  }
+		    	  
+		    	  scratch = new ScratchSpace(getScratchDir());
+		    	  if (provenance != null && handler != null) rdfHandler = provenance.count(handler);
+		    	  emitJcampDx(jcamp, fileName, provenance);
+		      } finally {
+		    	  rdfHandler = handler;
+		    	  lease.close();
+		    	  if (scratch != null) scratch.close();
+		    	  scratch = null;
+		    	  wavelength = null;
+		    	  intensity = null;
+		      }
+		      
+		  }
+		  
+		  
+		  /**
+		   * Adding the labelled data records and the spectrum of a decoded JCAMP-DX file </br>
+		   * 
+		   * @param jcamp the decoded file </br>
+		   * @param fileName the name of the imported file </br>
+		   * @param provenance the provenance of the parse, null if it is not recorded </br>
+		   * 
+		   * @throws IOException
+		   * @throws RDFParseException
+		   * @throws RDFHandlerException
+		   */
+		  private void emitJcampDx(JcampDxReader jcamp, String fileName, ParseProvenance provenance) 
+				  throws IOException, RDFParseException, RDFHandlerException {
+		      
+		      URI uri = resolveURI(fileName);
+		      createAcquisitionNode(uri, fileName, JCAMP_MIME_TYPE_VALUE);
+		      
+		      for (Map.Entry<String, String> field : jcamp.getHeader().entrySet()){
+		    	  
+		    	  //labels may carry a '$' prefix (user defined) or other punctuation
+		    	  String key = field.getKey().replaceAll("[^A-Za-z0-9]", "");
+		    	  if (key.length() == 0)
+		    		  continue;
+		    	  String value = field.getValue();
+		    	  URI uri_type = XSD_DOUBLE_LEXICAL.matcher(value).matches() ? createURI(XSD_DOUBLE) : createURI(XSD_STRING);
+		    	  log.info(key, value);
+		    	  createSPCNode(uri, key, value, "UnKnown Yet", uri_type);
+		      }
+		      
+		      if (jcamp.isPeakTable()){
+		    	  //a list of peaks is not a spectrum, it is added as is and no feature is derived from it
+		    	  createSPCNode(uri, "peakPositions", Arrays.toString(jcamp.getX()), "Positions of the peaks of a peak table", createURI(XSD_STRING));
+		    	  createSPCNode(uri, "peakHeights", Arrays.toString(jcamp.getY()), "Heights of the peaks of a peak table", createURI(XSD_STRING));
+		      }else {
+		    	  iterateDoubles(uri, "wavelength", jcamp.getX());
+		    	  iterateDoubles(uri, "intensity", jcamp.getY());
+		      }
+		      
+		      extractFileName(uri, fileName);
+		      checkSkolemIris(fileName);
+		      if (provenance != null) provenance.stage("emit");
+		      
+		      if (wavelength != null && intensity != null)
+		    	  processSpectrum(uri, fileName, new RamanSpectrum(wavelength, intensity));
+		      if (provenance != null) provenance.stage("features");
+		      
+		      if (provenance != null)
+		    	  createProvenanceNode(uri, provenance, "native");
+		      
+		  }
+		  
+		  
+		  /**
+		   * Leasing memory from the {@link ParseMemoryBudget} for the data of a file </br>
+		   * 
+		   * @param dataBytes the size of the data as read </br>
+		   * @return the lease, to be closed once the file is parsed </br>
+		   * @throws InterruptedIOException if the thread is interrupted while waiting for memory </br>
+		   */
+		  protected ParseMemoryBudget.Lease acquireMemory(long dataBytes) throws InterruptedIOException {
+			  
+			  ParseMemoryBudget budget = ParseMemoryBudget.get(getParserConfig().get(SpcParserSettings.MEMORY_BUDGET_BYTES));
+			  try {
+				  return budget.acquire(dataBytes * getParserConfig().get(SpcParserSettings.MEMORY_PER_DATA_BYTE));
+			  } catch (InterruptedException e) {
+				  Thread.currentThread().interrupt();
+				  throw new InterruptedIOException("interrupted while waiting for the parse memory budget");
+			  }
+		  }
+		  
+		  
+		  private File getScratchDir() {
+			  String dir = getParserConfig().get(SpcParserSettings.SCRATCH_DIR);
+			  return dir == null ? null : new File(dir);
+		  }
+		  
+		  
+		  /**
+		   * Keeping a copy of the intensities for {@link AbstractRamanParser#processSpectrum(URI, String, RamanSpectrum)} </br>
+		   * Arrays larger than the spill threshold are copied to a memory mapped scratch file instead of the heap </br>
+		   * 
+		   * @param values the intensities </br>
+		   * @return the copy </br>
+		   * @throws RDFParseException if the scratch file cannot be written </br>
+		   */
+		  private DoubleBuffer retain(double [] values) throws RDFParseException {
+			  
+			  if (8L * values.length <= getParserConfig().get(SpcParserSettings.SPILL_THRESHOLD_BYTES) || scratch == null)
+				  return DoubleBuffer.wrap(values.clone());
+			  try {
+				  return scratch.spill(values);
+			  } catch (IOException e) {
+				  throw new RDFParseException(e);
+			  }
+		  }
+		  
+		  
+		  /**
+		   * Creating the node holding the properties of a key of root </br>
+		   * 
+		   * By default it is a blank node. With {@link SpcParserSettings#SKOLEM_IRIS} it is an IRI </br>
+		   * minted from root, the key and the number of times the key was already used for the current file, </br>
+		   * so that importing the same file again produces the same IRIs </br>
+		   * 
+		   * @param root an URI reference </br>
+		   * @param key key value of the property </br>
+		   * @return a new node </br>
+		   * @throws RDFParseException
+		   */
+		  protected Resource createPropertyNode(URI root, String key) throws RDFParseException {
+			  
+			  if (!getParserConfig().get(SpcParserSettings.SKOLEM_IRIS))
+				  return createBNode();
+			  
+			  return createURI(skolemIris.mint(root.stringValue(), key));
+		  }
+		  
+		  
+		  /**
+		   * Warning that {@link SpcParserSettings#SKOLEM_IRIS} is set but the parser created no property node </br>
+		   * for a file, e.g. {@link SpcParser_v2} that {@link SpcParserFactory} returns adds the properties </br>
+		   * directly to the acquisition node </br>
+		   * 
+		   * @param fileName the name of the file </br>
+		   */
+		  private void checkSkolemIris(String fileName) {
+			  
+			  if (getParserConfig().get(SpcParserSettings.SKOLEM_IRIS) && skolemIris.isEmpty())
+				  log.warn("skolem IRIs are enabled but {} created no property node for {}", getClass().getSimpleName(), fileName);
+		  }
+		  
+		  
+		  /**
+		   * Normalizing the base URI by separating the file name and the original value </br>
+		   * The part up to "resource/" becomes the base URI of the parser </br>
+		   * 
+		   * @param baseURI the URI associated with the imported data </br>
+		   * @return the file name, i.e. the part of the URI following "resource/" </br>
+		   */
+		  protected String normalizeBaseURI(String baseURI) {
+			  
+			  int index = baseURI.indexOf("resource") + 9;
+			  
+			  String uriNormalization = baseURI.substring(0, index);
+			  
+			  String fileName = baseURI.substring(index, baseURI.length());
+			  
+			  log.info("URI after normalization ", uriNormalization);
+			  
+			  setBaseURI(uriNormalization);
+			  
+			  return fileName;
+		  }
+		  
+		  
+		  /**
+		   * Typing the root node of an imported file as ExperimentalData, FileRamanSpectrometer and Acquisition </br>
+		   * and adding its mime type and file name </br>
+		   * 
+		   * @param uri the root URI reference </br>
+		   * @param fileName the name of the imported file </br>
+		   * @param mimeType the mime type of the imported file </br>
+		   * 
+		   * @throws RDFParseException
+		   * @throws RDFHandlerException
+		   */
+		  protected void createAcquisitionNode(URI uri, String fileName, String mimeType) 
+				  throws RDFParseException, RDFHandlerException {
+			  
+			  URI p_type       = createURI(NS_RDF + "type");
+			  //create an ExperimentalData node
+			  Resource experimentalData_node = createURI(NS_SPC + "ExperimentalData");
+			  rdfHandler.handleStatement(createStatement(uri, p_type, experimentalData_node));
+			  //create a FileRamanSpectrometer node
+			  URI ramanFile_node = createURI(NS_SPC + "FileRamanSpectrometer");
+			  rdfHandler.handleStatement(createStatement(uri, p_type, ramanFile_node));
+			  //create an Acquisition node
+			  URI acquisition_node = createURI(NS_SPC + "Acquisition");
+			  rdfHandler.handleStatement(createStatement(uri, p_type, acquisition_node));
+			  
+			  createMimeTypeNode(uri, "mimeType", mimeType, "Mime Type");
+			  //insert a node with the value of file name
+			  createSPCNode(uri, "filename", fileName, "Raman SPC's filename", createURI(XSD_STRING));
 		  }
 
 		
@@ -347,7 +637,27 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 				
 				log.info("here is a double array");
 				
-				double [] arrays =  reDouble.asDoubles();
+				iterateDoubles(root, key, reDouble.asDoubles());
+				
+			}
+			
+			/**
+			 * 
+			 * Building property from a double value or array double value and the input key value by function </br> 
+			 * {@code AbstractRamanParser#createSPCNode(URI, String, Object, String, URI)} </br>
+			 * The wavelength and intensity arrays are kept for {@link AbstractRamanParser#processSpectrum(URI, String, RamanSpectrum)} </br>
+			 * They are added as literals unless they are larger than {@link SpcParserSettings#SPILL_THRESHOLD_BYTES} </br>
+			 * 
+			 * @param root an URI reference   </br>
+			 * @param key key value of node </br>
+			 * @param arrays the values, sorted in place </br> 
+			 * 
+			 * @throws RDFParseException
+			 * @throws RDFHandlerException
+			 */
+			public  void iterateDoubles(URI root,  String key, double [] arrays) 
+					throws RDFParseException, RDFHandlerException{
+				
 				int len = arrays.length;
 				
 				switch (len){
@@ -361,10 +671,26 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 						createSPCNode(root,  key, arrays[0], "UnKnown Yet", createURI(XSD_DOUBLE));
 						break;
 					default:
-						Arrays.sort(arrays);
+						//the array is sorted below (for REXP objects it is their own payload), keep a copy
+						if (key.equalsIgnoreCase("intensity")){
+							intensity = retain(arrays);
+						}else if (key.equalsIgnoreCase("wavelength")){
+							wavelength = arrays.clone();
+						}
+						if ((key.equalsIgnoreCase("intensity") || key.equalsIgnoreCase("wavelength")) && isCatalogOnly()){
+							//the arrays are exported to Arrow files, keep the graph for the catalog metadata
+							break;
+						}
 						if (key.equalsIgnoreCase("intensity") || key.equalsIgnoreCase("wavelength")){
+							if (8L * len > getParserConfig().get(SpcParserSettings.SPILL_THRESHOLD_BYTES)){
+								//its text would hold the array several times over
+								log.warn("{} of {} has {} values, it is not added as a literal", key, root, len);
+								break;
+							}
+							Arrays.sort(arrays);
 							createSPCNode(root, key, Arrays.toString(arrays), "Unknown Yet", createURI(XSD_STRING));
 						}else {
+							Arrays.sort(arrays);
 							createSPCNode(root, key, arrays, "Unknown Yet", createURI(XSD_DOUBLE));
 						}
 //						System.out.println("range(" + key + ")=" + "[" + arrays[0] + " : " + arrays[arrays.length - 1] + "]");
@@ -372,6 +698,14 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 				
 			}  
 
+			/**
+			 * @return true if spectra are exported to Arrow files and left out of the graph
+			 */
+			private boolean isCatalogOnly() {
+				return getParserConfig().get(SpcParserSettings.ARROW_EXPORT_DIR) != null 
+						&& getParserConfig().get(SpcParserSettings.ARROW_CATALOG_ONLY);
+			}
+			
 			/**
 			 * Extracting file name to collect an appropriate values of skin specification, day acquisition </br>
 			 * , measurement number and volunteer ID </br> 
@@ -449,6 +783,61 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 				
 			}
 			
+			/**
+			 * Extracting file name to collect the key of the group an acquisition belongs to </br>
+			 * The file name is split as in {@link AbstractRamanParser#extractFileName(URI, String)} </br>
+			 * 
+			 * @param fileName - A string with the template: 201502203V12_J1_T_m3.spc </br>
+			 * @return the volunteer ID, the day and the skin specification joined by '_', for example: V12_J1_T </br>
+			 * or null if one of them is missing from the file name
+			 */
+			public String extractGroupKey(String fileName) {
+				
+				Map<String, String> fields = parseFileName(fileName);
+				String volunteer = fields.get("volunteerID");
+				String day = fields.get("dayOrder");
+				String skin = fields.get("skinSpecification");
+				
+				if (volunteer == null || day == null || skin == null)
+					return null;
+				//Temoin, UVA, UVB are keyed by their letter in the file name
+				return volunteer + "_" + day + "_" + (skin.equals("Temoin") ? "T" : skin.substring(2));
+			}
+			
+			/**
+			 * Extracting file name to collect the values added by {@link AbstractRamanParser#extractFileName(URI, String)} </br>
+			 * without adding them to a node </br>
+			 * 
+			 * @param fileName - A string with the template: 201502203V12_J1_T_m3.spc </br>
+			 * @return the values found in the file name by property name: volunteerID, dayOrder, </br>
+			 * skinSpecification and measurementNumber </br>
+			 */
+			public Map<String, String> parseFileName(String fileName) {
+				
+				Map<String, String> fields = new LinkedHashMap<String, String>();
+				
+				String parts[] = fileName.split("_");
+				for (String element : parts) {
+					
+					if (element.equalsIgnoreCase("T")){
+						fields.put("skinSpecification", "Temoin");
+					}else if (element.equalsIgnoreCase("A")){
+						fields.put("skinSpecification", "UVA");
+					}else if (element.equalsIgnoreCase("B")){
+						fields.put("skinSpecification", "UVB");
+					}else if (element.startsWith("J")){
+						fields.put("dayOrder", element);
+					}else if (element.startsWith("m")){
+						if (element.matches("m[1-6].*"))
+							fields.put("measurementNumber", element.substring(0, 2));
+					}else if (element.indexOf("V") >= 0){
+						fields.put("volunteerID", "V".concat(element.split("V")[1]));
+					}
+				}
+				
+				return fields;
+			}
+			
 			
 		/**
 		 * Deriving double value or array double value from REXPString object </br>
@@ -589,6 +978,265 @@ public abstract class AbstractRamanParser extends RDFParserBase {
 		      
 		}
 
+		/**
+		 * Deriving features from the spectral data of a file and adding them to root </br>
+		 * Peaks are detected by {@link PeakDetector} and added by </br>
+		 * {@link AbstractRamanParser#createPeakNodes(URI, RamanSpectrum)} </br>
+		 * The fingerprint of the spectrum is added to the configured {@link SpectralIndex} </br>
+		 * The spectrum replaces the previous contribution of root in the configured {@link SpectrumAggregates} </br>
+		 * and the updated aggregate is added by {@link AbstractRamanParser#createAggregateNode(URI, SpectrumAggregates.Group, SpectrumBinning)} </br>
+		 * A preview of the spectrum is queued on {@link SpectrumPreviewRenderer} and linked from root by foaf:depiction </br>
+		 * under {@link SpcParserSettings#PREVIEW_BASE_URL}, unless it cannot be queued or no base URL is set </br>
+		 * The spectrum is exported to the configured {@link ArrowSpectrumWriter}, root gets the file and the row it is written to </br>
+		 * When the arrays are left out of the graph, the Arrow file is closed and synced before the parse goes on, </br>
+		 * and a failed export fails the parse </br>
+		 * 
+		 * @param root an URI reference </br>
+		 * @param fileName the name of the imported file </br>
+		 * @param spectrum the decoded spectral data </br>
+		 * 
+		 * @throws RDFParseException
+		 * @throws RDFHandlerException
+		 */
+		public void processSpectrum(URI root, String fileName, RamanSpectrum spectrum) 
+				throws RDFParseException, RDFHandlerException {
+			
+			if (getParserConfig().get(SpcParserSettings.PEAK_DETECTION))
+				createPeakNodes(root, spectrum);
+			
+			String indexDir = getParserConfig().get(SpcParserSettings.SIMILARITY_INDEX_DIR);
+			if (indexDir != null){
+				//the index is optional, a corrupt or full index must not fail the import
+				try {
+					SpectralIndex.open(new File(indexDir)).add(root.stringValue(), spectrum);
+				} catch (IOException | RuntimeException e) {
+					log.error("cannot index {}: {}", root, e.getMessage());
+				}
+			}
+			
+			String aggregateFile = getParserConfig().get(SpcParserSettings.AGGREGATE_FILE);
+			String groupKey = extractGroupKey(fileName);
+			if (aggregateFile != null && groupKey != null){
+				try {
+					SpectrumAggregates aggregates = SpectrumAggregates.open(new File(aggregateFile));
+					createAggregateNode(root, aggregates.update(root.stringValue(), groupKey, spectrum), aggregates.getBinning());
+				} catch (IOException | RuntimeException e) {
+					log.error("cannot aggregate {}: {}", root, e.getMessage());
+				}
+			}
+			
+			String previewDir = getParserConfig().get(SpcParserSettings.PREVIEW_DIR);
+			if (previewDir != null){
+				//the image is rendered in background, the link is added once it is cached or queued
+				String hash = SpectrumPreviewRenderer.contentHash(spectrum);
+				File preview = new SpectrumPreviewRenderer(new File(previewDir)).submit(spectrum, hash);
+				String previewBaseUrl = getParserConfig().get(SpcParserSettings.PREVIEW_BASE_URL);
+				if (preview != null && previewBaseUrl != null){
+					rdfHandler.handleStatement(createStatement(root, createURI(NS_FOAF + "depiction"), 
+							createURI(previewBaseUrl + preview.getName())));
+				}else if (preview != null){
+					log.warn("no preview base URL is set, the preview of {} is not linked", root);
+				}
+			}
+			
+			String arrowDir = getParserConfig().get(SpcParserSettings.ARROW_EXPORT_DIR);
+			if (arrowDir != null){
+				try {
+					ArrowSpectrumWriter.Location location = ArrowSpectrumWriter
+							.open(new File(arrowDir), getParserConfig().get(SpcParserSettings.ARROW_MAX_FILE_BYTES), 
+									getParserConfig().get(SpcParserSettings.ARROW_MAX_FILE_MILLIS))
+							.append(root.stringValue(), fileName, parseFileName(fileName), spectrum, isCatalogOnly());
+					rdfHandler.handleStatement(createStatement(root, createURI(NS_SPC + "columnarFile"), 
+							createLiteral(location.getFile(), null, createURI(XSD_STRING))));
+					rdfHandler.handleStatement(createStatement(root, createURI(NS_SPC + "columnarRow"), 
+							createLiteral(String.valueOf(location.getRow()), null, createURI(XSD_INT))));
+				} catch (IOException | RuntimeException e) {
+					//in catalog only mode the arrays are not in the graph, the parse must not succeed without them
+					if (isCatalogOnly())
+						throw new RDFParseException("cannot export " + root + " to Arrow: " + e.getMessage());
+					log.error("cannot export {}: {}", root, e.getMessage());
+				}
+			}
+			
+		}
+		
+		
+		/**
+		 * Detecting the peaks of every subfile and adding each of them to root as a spc:Peak node </br>
+		 * with its subfile index, position, height, full width at half maximum and area </br>
+		 * 
+		 * The peak URI is derived from the root URI, the subfile index and the peak index </br>
+		 * 
+		 * @param root an URI reference </br>
+		 * @param spectrum the decoded spectral data </br>
+		 * 
+		 * @throws RDFParseException
+		 * @throws RDFHandlerException
+		 */
+		public void createPeakNodes(URI root, RamanSpectrum spectrum) 
+				throws RDFParseException, RDFHandlerException {
+			
+			PeakDetector detector = new PeakDetector(
+					getParserConfig().get(SpcParserSettings.PEAK_MIN_HEIGHT),
+					getParserConfig().get(SpcParserSettings.PEAK_MIN_PROMINENCE),
+					getParserConfig().get(SpcParserSettings.PEAK_SMOOTHING_WINDOW));
+			
+			List<List<PeakDetector.Peak>> peaks;
+			try {
+				peaks = detector.detectAll(spectrum);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.error("peak detection interrupted for {}", root);
+				return;
+			}
+			
+			URI p_type = createURI(NS_RDF + "type");
+			URI peak_type = createURI(NS_SPC + "Peak");
+			URI p_hasPeak = createURI(NS_SPC + "hasPeak");
+			URI p_subfile = createURI(NS_SPC + "subfile");
+			URI p_position = createURI(NS_SPC + "position");
+			URI p_height = createURI(NS_SPC + "height");
+			URI p_fwhm = createURI(NS_SPC + "fwhm");
+			URI p_area = createURI(NS_SPC + "area");
+			URI xsd_double = createURI(XSD_DOUBLE);
+			URI xsd_int = createURI(XSD_INT);
+			
+			for (int subfile = 0; subfile < peaks.size(); subfile++){
+				
+				int i = 0;
+				for (PeakDetector.Peak peak : peaks.get(subfile)){
+					
+					URI peak_node = createURI(root.stringValue() + "/peak/" + subfile + "_" + i++);
+					rdfHandler.handleStatement(createStatement(peak_node, p_type, peak_type));
+					rdfHandler.handleStatement(createStatement(peak_node, p_subfile, createLiteral(String.valueOf(subfile), null, xsd_int)));
+					rdfHandler.handleStatement(createStatement(peak_node, p_position, createLiteral(String.valueOf(peak.getPosition()), null, xsd_double)));
+					rdfHandler.handleStatement(createStatement(peak_node, p_height, createLiteral(String.valueOf(peak.getHeight()), null, xsd_double)));
+					rdfHandler.handleStatement(createStatement(peak_node, p_fwhm, createLiteral(String.valueOf(peak.getFwhm()), null, xsd_double)));
+					rdfHandler.handleStatement(createStatement(peak_node, p_area, createLiteral(String.valueOf(peak.getArea()), null, xsd_double)));
+					rdfHandler.handleStatement(createStatement(root, p_hasPeak, peak_node));
+				}
+			}
+			
+		}
+		
+		
+		/**
+		 * Adding the state of a spectrum aggregate after an update </br>
+		 * 
+		 * The aggregate node (spc:Aggregate) is identified by its group key and is linked from root </br>
+		 * Its state is a snapshot node (spc:AggregateSnapshot) with the count and the mean and standard deviation </br>
+		 * spectra over the bins of the wavelength grid. The snapshot is identified by a hash of its state, </br>
+		 * so importing a file again without changing it adds no snapshot, while every state the aggregate </br>
+		 * goes through is kept: the store grows by one snapshot per acquisition added to or changed in the group </br>
+		 * Every emission of a snapshot adds the time of the update as spc:lastUpdated, the current state of </br>
+		 * an aggregate is its snapshot with the latest spc:lastUpdated </br>
+		 * 
+		 * @param root an URI reference </br>
+		 * @param group the updated group </br>
+		 * @param binning the wavelength grid of the aggregates </br>
+		 * 
+		 * @throws RDFParseException
+		 * @throws RDFHandlerException
+		 */
+		public void createAggregateNode(URI root, SpectrumAggregates.Group group, SpectrumBinning binning) 
+				throws RDFParseException, RDFHandlerException {
+			
+			URI p_type = createURI(NS_RDF + "type");
+			URI xsd_double = createURI(XSD_DOUBLE);
+			URI xsd_string = createURI(XSD_STRING);
+			
+			URI aggregate_node = resolveURI("aggregate/" + group.getKey());
+			rdfHandler.handleStatement(createStatement(aggregate_node, p_type, createURI(NS_SPC + "Aggregate")));
+			rdfHandler.handleStatement(createStatement(aggregate_node, createURI(NS_SPC + "groupKey"), createLiteral(group.getKey(), null, xsd_string)));
+			rdfHandler.handleStatement(createStatement(root, createURI(NS_SPC + "aggregatedIn"), aggregate_node));
+			
+			String mean = Arrays.toString(group.getMean());
+			String std = Arrays.toString(group.getStandardDeviation());
+			URI snapshot_node = createURI(aggregate_node.stringValue() + "/" + group.getCount() + "-" 
+					+ Long.toHexString(SkolemIris.fnv1a64(mean + std)));
+			rdfHandler.handleStatement(createStatement(aggregate_node, createURI(NS_SPC + "hasSnapshot"), snapshot_node));
+			rdfHandler.handleStatement(createStatement(snapshot_node, p_type, createURI(NS_SPC + "AggregateSnapshot")));
+			
+			DateFormat dt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+			dt.setTimeZone(TimeZone.getTimeZone("UTC"));
+			rdfHandler.handleStatement(createStatement(snapshot_node, createURI(NS_SPC + "lastUpdated"), 
+					createLiteral(dt.format(new Date(group.getLastUpdated())), null, createURI(XSD_DATE))));
+			rdfHandler.handleStatement(createStatement(snapshot_node, createURI(NS_SPC + "count"), 
+					createLiteral(String.valueOf(group.getCount()), null, createURI(XSD_LONG))));
+			rdfHandler.handleStatement(createStatement(snapshot_node, createURI(NS_SPC + "binFrom"), 
+					createLiteral(String.valueOf(binning.getFrom()), null, xsd_double)));
+			rdfHandler.handleStatement(createStatement(snapshot_node, createURI(NS_SPC + "binTo"), 
+					createLiteral(String.valueOf(binning.getTo()), null, xsd_double)));
+			rdfHandler.handleStatement(createStatement(snapshot_node, createURI(NS_SPC + "bins"), 
+					createLiteral(String.valueOf(binning.getBins()), null, createURI(XSD_INT))));
+			rdfHandler.handleStatement(createStatement(snapshot_node, createURI(NS_SPC + "meanSpectrum"), 
+					createLiteral(mean, null, xsd_string)));
+			rdfHandler.handleStatement(createStatement(snapshot_node, createURI(NS_SPC + "stdSpectrum"), 
+					createLiteral(std, null, xsd_string)));
+			
+		}
+		
+		
+		/**
+		 * Adding a PROV-O activity describing the parse that produced root </br>
+		 * 
+		 * The activity records the parser variant, the decoder, the size and SHA-1 of the input, </br>
+		 * the number of statements produced for root and the duration of every stage in nanoseconds, </br>
+		 * e.g. spc:decodeNanos. Its URI is derived from root and the start time of the parse </br>
+		 * 
+		 * @param root an URI reference </br>
+		 * @param provenance the facts recorded during the parse </br>
+		 * @param decoder R for files decoded by hyperSpec, native for files decoded in Java </br>
+		 * 
+		 * @throws RDFParseException
+		 * @throws RDFHandlerException
+		 */
+		public void createProvenanceNode(URI root, ParseProvenance provenance, String decoder) 
+				throws RDFParseException, RDFHandlerException {
+			
+			//read the count before the statements below are counted too
+			long statementCount = provenance.getStatementCount();
+			
+			URI p_type = createURI(NS_RDF + "type");
+			URI xsd_long = createURI(XSD_LONG);
+			URI xsd_string = createURI(XSD_STRING);
+			DateFormat dt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+			dt.setTimeZone(TimeZone.getTimeZone("UTC"));
+			
+			URI activity_node = createURI(root.stringValue() + "/provenance/" + provenance.getStartMillis());
+			rdfHandler.handleStatement(createStatement(activity_node, p_type, createURI(NS_PROV + "Activity")));
+			rdfHandler.handleStatement(createStatement(root, createURI(NS_PROV + "wasGeneratedBy"), activity_node));
+			
+			URI agent_node = createURI(NS_SPC + getClass().getSimpleName());
+			rdfHandler.handleStatement(createStatement(agent_node, p_type, createURI(NS_PROV + "SoftwareAgent")));
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_PROV + "wasAssociatedWith"), agent_node));
+			
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_PROV + "startedAtTime"), 
+					createLiteral(dt.format(new Date(provenance.getStartMillis())), null, createURI(XSD_DATE))));
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_PROV + "endedAtTime"), 
+					createLiteral(dt.format(new Date(provenance.getEndMillis())), null, createURI(XSD_DATE))));
+			
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_SPC + "parserVariant"), 
+					createLiteral(getClass().getSimpleName(), null, xsd_string)));
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_SPC + "decoder"), 
+					createLiteral(decoder, null, xsd_string)));
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_SPC + "inputSize"), 
+					createLiteral(String.valueOf(provenance.getInputSize()), null, xsd_long)));
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_SPC + "inputSha1"), 
+					createLiteral(provenance.getInputHash(), null, xsd_string)));
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_SPC + "statementCount"), 
+					createLiteral(String.valueOf(statementCount), null, xsd_long)));
+			
+			for (int i = 0; i < provenance.getStageCount(); i++){
+				rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_SPC + provenance.getStage(i) + "Nanos"), 
+						createLiteral(String.valueOf(provenance.getDuration(i)), null, xsd_long)));
+			}
+			rdfHandler.handleStatement(createStatement(activity_node, createURI(NS_SPC + "totalNanos"), 
+					createLiteral(String.valueOf(provenance.getTotalDuration()), null, xsd_long)));
+			
+		}
+		
+		
 		/**
 		 * Creating a property node from the input values as a child of root </br>
 		 * 
@@ -0,0 +1,383 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.impl.UnionListWriter;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Columnar export of decoded spectra to Apache Arrow IPC files </br>
+ *
+ * Each subfile of a spectrum becomes one row with the acquisition URI, the file name, </br>
+ * the metadata extracted from the file name, the subfile index and the wavelength and intensity </br>
+ * arrays as lists of float32. Rows are buffered off heap and written as record batches of at most </br>
+ * {@link #BATCH_ROWS} rows or {@link #BATCH_BYTES} bytes of arrays, so the buffer stays bounded </br>
+ * whatever the size of the spectra: about BATCH_BYTES plus the largest spectrum. </br>
+ * A file is closed, i.e. its footer is written, once the arrays written to it exceed the configured size </br>
+ * or once it has been open for the configured time, whichever comes first. The next spectrum goes to a new file, </br>
+ * so the rows of a spectrum never span two files. </br>
+ *
+ * A file is written under a .part name and renamed when it is closed: a file named by {@link Location#getFile()} </br>
+ * appears at most the configured time after the spectrum is appended, complete, and can be memory mapped </br>
+ * by any Arrow implementation. A JVM killed before a file is closed loses the rows of that file, </br>
+ * i.e. at most the spectra appended during the configured time; the .part file is left behind. </br>
+ * A spectrum appended as durable closes and syncs its file before the append returns, use it when </br>
+ * the Arrow file holds the only copy of the arrays. </br>
+ *
+ * A file that cannot be written is closed and renamed with a .failed suffix, the rows already appended </br>
+ * to it are lost, the next spectrum starts a new file. </br>
+ *
+ * Use {@link #open(File, long, long)} to get the writer shared by every parser of the JVM for a directory. </br>
+ * Open files are closed when the JVM shuts down. </br>
+ *
+ */
+public class ArrowSpectrumWriter implements Closeable {
+
+	public static final int BATCH_ROWS = 64;
+	public static final long BATCH_BYTES = 16L * 1024 * 1024;
+	private static final String PART_SUFFIX = ".part";
+	private static final String FAILED_SUFFIX = ".failed";
+
+	private static final Map<File, ArrowSpectrumWriter> instances = new HashMap<File, ArrowSpectrumWriter>();
+
+	private static Logger log = LoggerFactory.getLogger(ArrowSpectrumWriter.class);
+
+	/**
+	 * closes the files that have been open for too long
+	 */
+	private static final ScheduledExecutorService closer = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("spc-arrow-closer-%d").setDaemon(true).build());
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("spc-arrow-close") {
+			@Override
+			public void run() {
+				List<ArrowSpectrumWriter> writers;
+				synchronized (instances) {
+					writers = new ArrayList<ArrowSpectrumWriter>(instances.values());
+				}
+				for (ArrowSpectrumWriter writer : writers) {
+					try {
+						writer.close();
+					} catch (IOException e) {
+						log.error("cannot close Arrow file in {}: {}", writer.directory, e.getMessage());
+					}
+				}
+			}
+		});
+	}
+
+	private static final String[] TEXT_COLUMNS = { "uri", "filename", "volunteerID", "dayOrder", "skinSpecification", "measurementNumber" };
+
+	private final File directory;
+	private final long maxFileBytes;
+	private final long maxFileMillis;
+	private final BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+	private final Schema schema;
+
+	private VectorSchemaRoot root;
+	private ArrowFileWriter writer;
+	private FileChannel channel;
+	private File current;
+	private int rowsInFile;
+	private int rowsInBatch;
+	private long bytesInBatch;
+	private long bytesInFile;
+	private int sequence;
+
+	/**
+	 * Returning the writer of a directory, creating it if needed </br>
+	 *
+	 * @param directory the directory of the Arrow files </br>
+	 * @param maxFileBytes the size over which a file is closed and a new one is started </br>
+	 * @param maxFileMillis the time after which a file is closed and a new one is started </br>
+	 * @return the shared writer, created with the limits of the first call for the directory </br>
+	 * @throws IOException if the directory cannot be resolved </br>
+	 */
+	public static ArrowSpectrumWriter open(File directory, long maxFileBytes, long maxFileMillis) throws IOException {
+		File key = directory.getCanonicalFile();
+		synchronized (instances) {
+			ArrowSpectrumWriter writer = instances.get(key);
+			if (writer == null) {
+				writer = new ArrowSpectrumWriter(key, maxFileBytes, maxFileMillis);
+				instances.put(key, writer);
+			}
+			return writer;
+		}
+	}
+
+	/**
+	 * @param directory the directory of the Arrow files </br>
+	 * @param maxFileBytes the size over which a file is closed and a new one is started </br>
+	 * @param maxFileMillis the time after which a file is closed and a new one is started </br>
+	 */
+	public ArrowSpectrumWriter(File directory, long maxFileBytes, long maxFileMillis) {
+		this.directory = directory;
+		this.maxFileBytes = maxFileBytes;
+		this.maxFileMillis = maxFileMillis;
+
+		List<Field> fields = new ArrayList<Field>();
+		for (String column : TEXT_COLUMNS) {
+			fields.add(new Field(column, FieldType.nullable(new ArrowType.Utf8()), null));
+		}
+		fields.add(new Field("subfile", FieldType.nullable(new ArrowType.Int(32, true)), null));
+		fields.add(floatList("wavelength"));
+		fields.add(floatList("intensity"));
+		this.schema = new Schema(fields);
+	}
+
+	private static Field floatList(String name) {
+		Field item = new Field("item", FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE)), null);
+		return new Field(name, FieldType.nullable(new ArrowType.List()), Collections.singletonList(item));
+	}
+
+	/**
+	 * Appending every subfile of a spectrum as a row </br>
+	 *
+	 * @param uri the acquisition URI </br>
+	 * @param fileName the name of the imported file </br>
+	 * @param metadata the values extracted from the file name, by column name </br>
+	 * @param spectrum the decoded spectrum </br>
+	 * @param durable whether the file is closed and synced before returning, so the rows survive a crash </br>
+	 * @return where the first row of the spectrum is written </br>
+	 * @throws IOException if the Arrow file cannot be written, it is then discarded </br>
+	 */
+	public synchronized Location append(String uri, String fileName, Map<String, String> metadata, RamanSpectrum spectrum,
+			boolean durable) throws IOException {
+
+		if (writer != null && bytesInFile >= maxFileBytes) {
+			finish();
+		}
+		if (writer == null) {
+			start();
+		}
+		Location location = new Location(current.getName(), rowsInFile);
+
+		try {
+			float[] wavelength = toFloats(spectrum.getWavelength());
+			for (int i = 0; i < spectrum.getSubfileCount(); i++) {
+
+				int row = rowsInBatch;
+				for (String column : TEXT_COLUMNS) {
+					String value = column.equals("uri") ? uri : column.equals("filename") ? fileName : metadata.get(column);
+					if (value != null) {
+						((VarCharVector) root.getVector(column)).setSafe(row, value.getBytes(Charsets.UTF_8));
+					}
+				}
+				((IntVector) root.getVector("subfile")).setSafe(row, i);
+				writeFloats((ListVector) root.getVector("wavelength"), row, wavelength);
+				writeFloats((ListVector) root.getVector("intensity"), row, toFloats(spectrum.getSubfile(i)));
+
+				rowsInBatch++;
+				rowsInFile++;
+				bytesInBatch += 8L * wavelength.length;
+				bytesInFile += 8L * wavelength.length;
+				if (rowsInBatch == BATCH_ROWS || bytesInBatch >= BATCH_BYTES) {
+					writeBatch();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			//part of the spectrum may be in the file, which is left in an unknown state
+			discard();
+			throw e;
+		}
+		if (durable) {
+			finish();
+		}
+		return location;
+	}
+
+	/**
+	 * Writing the buffered rows and closing the current file </br>
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (writer != null) {
+			finish();
+		}
+	}
+
+	private void start() throws IOException {
+		directory.mkdirs();
+		final File started = new File(directory, "spectra-" + System.currentTimeMillis() + "-" + sequence++ + ".arrow");
+		channel = new FileOutputStream(part(started)).getChannel();
+		current = started;
+		root = VectorSchemaRoot.create(schema, allocator);
+		allocate();
+		writer = new ArrowFileWriter(root, new DictionaryProvider.MapDictionaryProvider(), channel);
+		writer.start();
+		rowsInFile = 0;
+		rowsInBatch = 0;
+		bytesInBatch = 0;
+		bytesInFile = 0;
+		log.info("writing spectra to {}", current);
+
+		closer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (ArrowSpectrumWriter.this) {
+					//the file may have been closed for its size in the meantime
+					if (writer != null && current == started) {
+						try {
+							finish();
+						} catch (IOException | RuntimeException e) {
+							log.error("cannot close {}: {}", started, e.getMessage());
+						}
+					}
+				}
+			}
+		}, maxFileMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static File part(File file) {
+		return new File(file.getPath() + PART_SUFFIX);
+	}
+
+	/**
+	 * @return the file being written, null if none is open </br>
+	 */
+	synchronized File getCurrentFile() {
+		return writer == null ? null : part(current);
+	}
+
+	private void writeBatch() throws IOException {
+		for (FieldVector vector : root.getFieldVectors()) {
+			vector.setValueCount(rowsInBatch);
+		}
+		root.setRowCount(rowsInBatch);
+		writer.writeBatch();
+		allocate();
+		rowsInBatch = 0;
+		bytesInBatch = 0;
+	}
+
+	/**
+	 * Writing the buffered rows and the footer, syncing the file and giving it its final name
+	 */
+	private void finish() throws IOException {
+		try {
+			if (rowsInBatch > 0) {
+				writeBatch();
+			}
+			writer.end();
+			channel.force(true);
+		} catch (IOException | RuntimeException e) {
+			discard();
+			throw e;
+		}
+		release();
+		if (!part(current).renameTo(current)) {
+			throw new IOException("cannot move " + part(current) + " to " + current);
+		}
+		log.info("closed {} with {} rows", current, rowsInFile);
+	}
+
+	/**
+	 * Giving up the current file after a failure, the next spectrum starts a new file
+	 */
+	private void discard() {
+		try {
+			release();
+		} catch (IOException | RuntimeException e) {
+			log.warn("cannot close {}: {}", part(current), e.getMessage());
+		}
+		File failed = new File(current.getPath() + FAILED_SUFFIX);
+		if (!part(current).renameTo(failed)) {
+			part(current).delete();
+		}
+		log.error("discarded {} and its {} rows", current, rowsInFile);
+	}
+
+	private void release() throws IOException {
+		writer = null;
+		try {
+			root.close();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void allocate() {
+		for (FieldVector vector : root.getFieldVectors()) {
+			vector.allocateNew();
+		}
+	}
+
+	private static void writeFloats(ListVector vector, int row, float[] values) {
+		UnionListWriter listWriter = vector.getWriter();
+		listWriter.setPosition(row);
+		listWriter.startList();
+		for (float value : values) {
+			listWriter.float4().writeFloat4(value);
+		}
+		listWriter.endList();
+	}
+
+	private static float[] toFloats(double[] values) {
+		float[] result = new float[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = (float) values[i];
+		}
+		return result;
+	}
+
+
+	/**
+	 * The Arrow file and the index of the first row a spectrum is written to </br>
+	 */
+	public static class Location {
+
+		private final String file;
+		private final int row;
+
+		public Location(String file, int row) {
+			this.file = file;
+			this.row = row;
+		}
+
+		public String getFile() {
+			return file;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		@Override
+		public String toString() {
+			return file + "#" + row;
+		}
+
+	}
+
+}
@@ -0,0 +1,474 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openrdf.rio.RDFParseException;
+
+/**
+ * Streaming reader of JCAMP-DX spectra </br>
+ *
+ * The text is read line by line in a single pass: labelled data records (##LABEL=value) </br>
+ * are collected as header fields, data lines are decoded as soon as they are read, </br>
+ * so only the decoded values are kept in memory, never the text of the file. </br>
+ * The pass can stop before the data table, see {@link #readHeader()}, so that the memory </br>
+ * needed by the data can be reserved from the declared number of points before it is decoded. </br>
+ *
+ * Supported data tables: </br>
+ * ##XYDATA=(X++(Y..Y)) in AFFN or ASDF compressed forms (SQZ, DIF, DUP), with DIF Y checks, </br>
+ * ##XYPOINTS=(XY..XY) and ##PEAKTABLE=(XY..XY) in AFFN form. </br>
+ * A peak table lists peaks, not a spectrum, see {@link #isPeakTable()}. </br>
+ * Only the first data table of the file is read, compound files (##NTUPLES) are not supported. </br>
+ *
+ */
+public class JcampDxReader {
+
+	private final BufferedReader reader;
+	private final Map<String, String> header = new LinkedHashMap<String, String>();
+	private int lineNumber;
+
+	private double[] x;
+	private double[] y;
+	private boolean peakTable;
+	//label and form of the data table reached by readHeader, not decoded yet
+	private String table;
+	private String form;
+
+	/**
+	 * @param reader the JCAMP-DX text </br>
+	 */
+	public JcampDxReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+	}
+
+	/**
+	 * Reading the whole file </br>
+	 *
+	 * @throws IOException if the text cannot be read </br>
+	 * @throws RDFParseException if the text is not a supported JCAMP-DX spectrum </br>
+	 */
+	public void read() throws IOException, RDFParseException {
+		readHeader();
+		readData();
+	}
+
+	/**
+	 * Reading the labelled data records that precede the data table, the data is not decoded </br>
+	 *
+	 * @throws IOException if the text cannot be read </br>
+	 * @throws RDFParseException if a record is not valid </br>
+	 */
+	public void readHeader() throws IOException, RDFParseException {
+		readRecords();
+	}
+
+	/**
+	 * Decoding the data table reached by {@link #readHeader()} and reading the records that follow it </br>
+	 *
+	 * @throws IOException if the text cannot be read </br>
+	 * @throws RDFParseException if the text is not a supported JCAMP-DX spectrum </br>
+	 */
+	public void readData() throws IOException, RDFParseException {
+
+		while (table != null) {
+			if (table.equals("XYDATA")) {
+				checkForm(form, "(X++(Y..Y))");
+				readXYData();
+			} else {
+				checkForm(form, "(XY..XY)");
+				peakTable = table.equals("PEAKTABLE");
+				readXYPoints();
+			}
+			table = null;
+			readRecords();
+		}
+		if (y == null) {
+			throw new RDFParseException("no XYDATA, XYPOINTS or PEAKTABLE in JCAMP-DX file");
+		}
+	}
+
+	/**
+	 * Reading labelled data records until a data table or the end of the file </br>
+	 */
+	private void readRecords() throws IOException, RDFParseException {
+
+		String label = null;
+		StringBuilder value = new StringBuilder();
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+
+			if (!line.startsWith("##")) {
+				//continuation of a multi-line value
+				if (label != null) {
+					value.append('\n').append(stripComment(line));
+				}
+				continue;
+			}
+
+			if (label != null) {
+				header.put(label, value.toString().trim());
+			}
+
+			int eq = line.indexOf('=');
+			if (eq < 0) {
+				throw new RDFParseException("labelled data record without '='", lineNumber, -1);
+			}
+			label = normalizeLabel(line.substring(2, eq));
+			value.setLength(0);
+			value.append(stripComment(line.substring(eq + 1)));
+
+			if (label.equals("END")) {
+				label = null;
+				break;
+			} else if (label.equals("NTUPLES")) {
+				throw new RDFParseException("compound JCAMP-DX files (NTUPLES) are not supported", lineNumber, -1);
+			} else if (label.equals("XYDATA") || label.equals("XYPOINTS") || label.equals("PEAKTABLE")) {
+				table = label;
+				form = value.toString();
+				return;
+			}
+		}
+
+		if (label != null) {
+			header.put(label, value.toString().trim());
+		}
+	}
+
+	/**
+	 * @return the labelled data records other than the data table, labels are normalized: </br>
+	 * upper case, without spaces, dashes, slashes and underscores </br>
+	 */
+	public Map<String, String> getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return the number of points declared by NPOINTS, -1 if it is not declared </br>
+	 */
+	public int getDeclaredPoints() {
+		try {
+			return (int) headerDouble("NPOINTS", -1);
+		} catch (RDFParseException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return true if the data table is a peak table: X and Y are the positions and heights of peaks </br>
+	 */
+	public boolean isPeakTable() {
+		return peakTable;
+	}
+
+	/**
+	 * @return the decoded abscissae, scaled by XFACTOR </br>
+	 */
+	public double[] getX() {
+		return x;
+	}
+
+	/**
+	 * @return the decoded ordinates, scaled by YFACTOR </br>
+	 */
+	public double[] getY() {
+		return y;
+	}
+
+	/**
+	 * Decoding (X++(Y..Y)) lines until the next labelled data record </br>
+	 * Abscissae are spread evenly from FIRSTX to LASTX </br>
+	 */
+	private void readXYData() throws IOException, RDFParseException {
+
+		double yFactor = headerDouble("YFACTOR", 1);
+		AsdfDecoder decoder = new AsdfDecoder();
+
+		String line;
+		reader.mark(MARK_LIMIT);
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith("##")) {
+				reader.reset();
+				break;
+			}
+			lineNumber++;
+			decoder.decodeLine(stripComment(line));
+			reader.mark(MARK_LIMIT);
+		}
+
+		int count = decoder.size;
+		y = Arrays.copyOf(decoder.values, count);
+		for (int i = 0; i < count; i++) {
+			y[i] *= yFactor;
+		}
+
+		double firstX = headerDouble("FIRSTX", Double.NaN);
+		double lastX = headerDouble("LASTX", Double.NaN);
+		if (Double.isNaN(firstX) || Double.isNaN(lastX)) {
+			throw new RDFParseException("FIRSTX and LASTX are required for XYDATA", lineNumber, -1);
+		}
+		int points = (int) headerDouble("NPOINTS", count);
+		if (points != count) {
+			throw new RDFParseException("NPOINTS is " + points + " but " + count + " values were decoded", lineNumber, -1);
+		}
+		x = new double[count];
+		double delta = count > 1 ? (lastX - firstX) / (count - 1) : 0;
+		for (int i = 0; i < count; i++) {
+			x[i] = firstX + i * delta;
+		}
+	}
+
+	/**
+	 * Decoding (XY..XY) pairs until the next labelled data record </br>
+	 */
+	private void readXYPoints() throws IOException, RDFParseException {
+
+		double xFactor = headerDouble("XFACTOR", 1);
+		double yFactor = headerDouble("YFACTOR", 1);
+		double[] xs = new double[1024];
+		double[] ys = new double[1024];
+		int count = 0;
+
+		String line;
+		reader.mark(MARK_LIMIT);
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith("##")) {
+				reader.reset();
+				break;
+			}
+			lineNumber++;
+			for (String pair : stripComment(line).split(";")) {
+				String[] parts = pair.trim().split("[\\s,]+");
+				if (parts.length == 1 && parts[0].isEmpty()) {
+					continue;
+				}
+				if (parts.length < 2) {
+					throw new RDFParseException("incomplete XY pair '" + pair.trim() + "'", lineNumber, -1);
+				}
+				if (count == xs.length) {
+					xs = Arrays.copyOf(xs, count * 2);
+					ys = Arrays.copyOf(ys, count * 2);
+				}
+				xs[count] = parseAffn(parts[0]) * xFactor;
+				ys[count] = parseAffn(parts[1]) * yFactor;
+				count++;
+			}
+			reader.mark(MARK_LIMIT);
+		}
+
+		x = Arrays.copyOf(xs, count);
+		y = Arrays.copyOf(ys, count);
+	}
+
+	private double headerDouble(String label, double defaultValue) throws RDFParseException {
+		String value = header.get(label);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		return parseAffn(value);
+	}
+
+	private double parseAffn(String value) throws RDFParseException {
+		try {
+			return value.equals("?") ? Double.NaN : Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			throw new RDFParseException("invalid number '" + value + "'", lineNumber, -1);
+		}
+	}
+
+	private void checkForm(String form, String expected) throws RDFParseException {
+		if (!form.replaceAll("\\s", "").equalsIgnoreCase(expected)) {
+			throw new RDFParseException("unsupported data table form " + form, lineNumber, -1);
+		}
+	}
+
+	private static String stripComment(String line) {
+		int comment = line.indexOf("$$");
+		return comment < 0 ? line : line.substring(0, comment);
+	}
+
+	/**
+	 * Labels are compared ignoring case, spaces, dashes, slashes and underscores
+	 */
+	private static String normalizeLabel(String label) {
+		return label.replaceAll("[\\s\\-/_]", "").toUpperCase();
+	}
+
+
+	/**
+	 * Decoder of ASDF data lines, it keeps the state needed across lines: </br>
+	 * the last value for DIF continuation and whether the next line starts with a Y check </br>
+	 */
+	private class AsdfDecoder {
+
+		private double[] values = new double[4096];
+		private int size;
+		private boolean yCheckPending;
+
+		private void decodeLine(String line) throws RDFParseException {
+
+			boolean abscissa = true;
+			boolean yCheck = yCheckPending;
+			boolean lastWasDif = false;
+			double last = size > 0 ? values[size - 1] : 0;
+			double lastDif = 0;
+			boolean anyToken = false;
+
+			int i = 0;
+			int n = line.length();
+			while (i < n) {
+
+				char c = line.charAt(i);
+				if (c == ' ' || c == '\t' || c == ',' || c == ';') {
+					i++;
+					continue;
+				}
+
+				int start = i;
+				int kind;
+				int digit;
+				if ((c >= '0' && c <= '9') || c == '.' || c == '+' || c == '-') {
+					kind = AFFN;
+					digit = 0;
+				} else if (c == '@') {
+					kind = SQZ;
+					digit = 0;
+				} else if (c >= 'A' && c <= 'I') {
+					kind = SQZ;
+					digit = c - 'A' + 1;
+				} else if (c >= 'a' && c <= 'i') {
+					kind = SQZ;
+					digit = -(c - 'a' + 1);
+				} else if (c == '%') {
+					kind = DIF;
+					digit = 0;
+				} else if (c >= 'J' && c <= 'R') {
+					kind = DIF;
+					digit = c - 'J' + 1;
+				} else if (c >= 'j' && c <= 'r') {
+					kind = DIF;
+					digit = -(c - 'j' + 1);
+				} else if (c >= 'S' && c <= 'Z') {
+					kind = DUP;
+					digit = c - 'S' + 1;
+				} else if (c == 's') {
+					kind = DUP;
+					digit = 9;
+				} else if (c == '?') {
+					kind = MISSING;
+					digit = 0;
+				} else {
+					throw new RDFParseException("invalid character '" + c + "' in data line", lineNumber, i + 1);
+				}
+
+				double number;
+				if (kind == AFFN) {
+					i++;
+					while (i < n && isAffnChar(line, i)) {
+						i++;
+					}
+					number = parseAffn(line.substring(start, i));
+				} else if (kind == MISSING) {
+					i++;
+					number = Double.NaN;
+				} else {
+					//the character stands for the sign and the first digit, the next digits follow
+					i++;
+					int digits = i;
+					while (i < n && ((line.charAt(i) >= '0' && line.charAt(i) <= '9') || line.charAt(i) == '.')) {
+						i++;
+					}
+					String rest = line.substring(digits, i);
+					double magnitude = rest.isEmpty() ? Math.abs(digit) : parseAffn(Math.abs(digit) + rest);
+					number = digit < 0 ? -magnitude : magnitude;
+				}
+
+				if (abscissa) {
+					//the abscissa of the line is computed from FIRSTX and LASTX
+					abscissa = false;
+					continue;
+				}
+				if (kind == DUP) {
+					if (!anyToken) {
+						throw new RDFParseException("DUP without a preceding value", lineNumber, start + 1);
+					}
+					for (int r = 1; r < (int) number; r++) {
+						if (lastWasDif) {
+							last += lastDif;
+						}
+						add(last);
+					}
+					continue;
+				}
+
+				if (kind == DIF) {
+					if (size == 0) {
+						throw new RDFParseException("DIF without a preceding value", lineNumber, start + 1);
+					}
+					last += number;
+					lastDif = number;
+					lastWasDif = true;
+				} else {
+					last = number;
+					lastWasDif = false;
+				}
+				anyToken = true;
+
+				if (yCheck) {
+					//a line following DIF data repeats the last value of the previous line
+					yCheck = false;
+					if (size > 0 && values[size - 1] != last) {
+						throw new RDFParseException("Y check failed, expected " + values[size - 1] + " but found " + last,
+								lineNumber, start + 1);
+					}
+					continue;
+				}
+				add(last);
+			}
+
+			if (anyToken) {
+				yCheckPending = lastWasDif;
+			}
+		}
+
+		private boolean isAffnChar(String line, int i) {
+			char c = line.charAt(i);
+			if ((c >= '0' && c <= '9') || c == '.') {
+				return true;
+			}
+			//an exponent is E or e directly followed by a sign, otherwise e is SQZ -5
+			if ((c == 'E' || c == 'e') && i + 1 < line.length()) {
+				char next = line.charAt(i + 1);
+				return next == '+' || next == '-';
+			}
+			if (c == '+' || c == '-') {
+				char previous = line.charAt(i - 1);
+				return previous == 'E' || previous == 'e';
+			}
+			return false;
+		}
+
+		private void add(double value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+	}
+
+	//JCAMP-DX lines are at most 80 characters long, leave room for sloppy writers
+	private static final int MARK_LIMIT = 1 << 16;
+
+	private static final int AFFN = 0;
+	private static final int SQZ = 1;
+	private static final int DIF = 2;
+	private static final int DUP = 3;
+	private static final int MISSING = 4;
+
+}
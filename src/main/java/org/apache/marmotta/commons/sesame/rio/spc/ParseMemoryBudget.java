@@ -0,0 +1,141 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.io.Closeable;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Memory budget shared by all parses running in the JVM </br>
+ *
+ * Every parse leases the number of bytes it is estimated to hold at once before </br>
+ * it loads its data, and gives them back when it is done. A parse that does not fit </br>
+ * in the remaining budget waits until enough bytes are released, so the peak heap used </br>
+ * by concurrent imports stays around the budget. A parse estimated above the whole budget </br>
+ * is granted the whole budget, i.e. it runs alone. A parse that learns the size of its data </br>
+ * only while it reads it leases an estimate first and resizes the lease afterwards. </br>
+ *
+ * Bytes are accounted in KiB so that budgets beyond 2 GB fit in a semaphore. </br>
+ *
+ */
+public class ParseMemoryBudget {
+
+	private static Logger log = LoggerFactory.getLogger(ParseMemoryBudget.class);
+
+	private static ParseMemoryBudget instance;
+
+	private final long budget;
+	private final int totalPermits;
+	private final Semaphore permits;
+
+	/**
+	 * Returning the budget of the JVM, creating it with the given size on first use </br>
+	 *
+	 * @param budget the size of the budget in bytes </br>
+	 * @return the shared budget, whose size is the one it was created with </br>
+	 */
+	public static synchronized ParseMemoryBudget get(long budget) {
+		if (instance == null) {
+			instance = new ParseMemoryBudget(budget);
+			log.info("parse memory budget is {} bytes", budget);
+		} else if (instance.budget != budget) {
+			log.warn("parse memory budget is already {} bytes, ignoring {}", instance.budget, budget);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param budget the size of the budget in bytes </br>
+	 */
+	public ParseMemoryBudget(long budget) {
+		Preconditions.checkArgument(budget >= 1024, "memory budget must be at least 1 KiB");
+		this.budget = budget;
+		this.totalPermits = (int) Math.min(Integer.MAX_VALUE, budget / 1024);
+		this.permits = new Semaphore(totalPermits, true);
+	}
+
+	/**
+	 * Leasing bytes from the budget, waiting until they are available </br>
+	 *
+	 * @param bytes the estimated number of bytes, it is capped to the whole budget </br>
+	 * @return the lease, to be closed when the bytes are no longer used </br>
+	 * @throws InterruptedException if the thread is interrupted while waiting </br>
+	 */
+	public Lease acquire(long bytes) throws InterruptedException {
+		int count = permitsFor(bytes);
+		if (!permits.tryAcquire(count)) {
+			log.info("waiting for {} KiB of the parse memory budget", count);
+			permits.acquire(count);
+		}
+		return new Lease(count);
+	}
+
+	private int permitsFor(long bytes) {
+		return (int) Math.max(1, Math.min(totalPermits, (bytes + 1023) / 1024));
+	}
+
+	/**
+	 * @return the size of the budget in bytes </br>
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return the number of bytes not leased </br>
+	 */
+	public long available() {
+		return permits.availablePermits() * 1024L;
+	}
+
+
+	/**
+	 * Bytes leased from the budget </br>
+	 */
+	public class Lease implements Closeable {
+
+		private int count;
+
+		private Lease(int count) {
+			this.count = count;
+		}
+
+		/**
+		 * Changing the number of bytes leased once the actual need is known </br>
+		 * Bytes beyond the lease are only taken if they are available right away: a parse holding </br>
+		 * a lease never waits for another one, which could wait for it in turn. A parse whose lease </br>
+		 * cannot grow must close it and acquire the bytes it needs again, waiting with nothing leased. </br>
+		 *
+		 * @param bytes the number of bytes needed, it is capped to the whole budget </br>
+		 * @return false if the lease could not grow to the bytes needed, it is then unchanged </br>
+		 */
+		public synchronized boolean resize(long bytes) {
+			Preconditions.checkState(count > 0, "lease is closed");
+			int wanted = permitsFor(bytes);
+			if (wanted < count) {
+				permits.release(count - wanted);
+			} else if (wanted > count && !permits.tryAcquire(wanted - count)) {
+				log.info("{} KiB leased but {} KiB needed, not available right away", count, wanted);
+				return false;
+			}
+			count = wanted;
+			return true;
+		}
+
+		/**
+		 * Giving the bytes back to the budget, closing a lease twice has no effect </br>
+		 */
+		@Override
+		public synchronized void close() {
+			if (count > 0) {
+				permits.release(count);
+				count = 0;
+			}
+		}
+
+	}
+
+}
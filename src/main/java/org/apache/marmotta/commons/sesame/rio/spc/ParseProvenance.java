@@ -0,0 +1,241 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+/**
+ * Facts about one parse, recorded while it runs and added to the graph at its end </br>
+ *
+ * Stage timings are taken from the monotonic clock (System.nanoTime) and buffered </br>
+ * in fixed arrays, the input is counted and hashed as it is read and statements </br>
+ * are counted as they are handled, so recording costs next to nothing. </br>
+ *
+ */
+public class ParseProvenance {
+
+	private static final int MAX_STAGES = 8;
+
+	private final long startMillis = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private long lastNanos = startNanos;
+
+	private final String[] stages = new String[MAX_STAGES];
+	private final long[] durations = new long[MAX_STAGES];
+	private int stageCount;
+
+	private final MessageDigest digest;
+	private long inputSize;
+	private long statementCount;
+
+	public ParseProvenance() {
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			//every JVM provides SHA-1
+			throw Throwables.propagate(e);
+		}
+	}
+
+	/**
+	 * Ending a stage, it lasted from the end of the previous stage (or the start of the parse) until now </br>
+	 *
+	 * @param name the name of the stage </br>
+	 */
+	public void stage(String name) {
+		long now = System.nanoTime();
+		Preconditions.checkState(stageCount < MAX_STAGES, "too many stages");
+		stages[stageCount] = name;
+		durations[stageCount++] = now - lastNanos;
+		lastNanos = now;
+	}
+
+	public int getStageCount() {
+		return stageCount;
+	}
+
+	public String getStage(int index) {
+		Preconditions.checkElementIndex(index, stageCount);
+		return stages[index];
+	}
+
+	/**
+	 * @param index index of the stage </br>
+	 * @return its duration in nanoseconds </br>
+	 */
+	public long getDuration(int index) {
+		Preconditions.checkElementIndex(index, stageCount);
+		return durations[index];
+	}
+
+	/**
+	 * @return the time from the start of the parse to the end of the last stage, in nanoseconds </br>
+	 */
+	public long getTotalDuration() {
+		return lastNanos - startNanos;
+	}
+
+	/**
+	 * @return the wall clock time the parse started at, in milliseconds since the epoch </br>
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * @return the wall clock time the last stage ended at, in milliseconds since the epoch </br>
+	 */
+	public long getEndMillis() {
+		return startMillis + getTotalDuration() / 1000000;
+	}
+
+	/**
+	 * @return the number of bytes (characters for a Reader) read so far </br>
+	 */
+	public long getInputSize() {
+		return inputSize;
+	}
+
+	/**
+	 * @return the hexadecimal SHA-1 of the input read so far, of its UTF-16 code units for a Reader </br>
+	 */
+	public String getInputHash() {
+		byte[] hash;
+		try {
+			hash = ((MessageDigest) digest.clone()).digest();
+		} catch (CloneNotSupportedException e) {
+			hash = digest.digest();
+		}
+		StringBuilder hex = new StringBuilder(2 * hash.length);
+		for (byte b : hash) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * @return the number of statements handled by the handler returned by {@link #count(RDFHandler)} </br>
+	 */
+	public long getStatementCount() {
+		return statementCount;
+	}
+
+	/**
+	 * @param in the input of the parse </br>
+	 * @return the input, counted and hashed as it is read </br>
+	 */
+	public InputStream wrap(InputStream in) {
+		return new FilterInputStream(in) {
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					digest.update((byte) b);
+					inputSize++;
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int n = super.read(buffer, offset, length);
+				if (n > 0) {
+					digest.update(buffer, offset, n);
+					inputSize += n;
+				}
+				return n;
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param reader the input of the parse </br>
+	 * @return the input, counted and hashed as it is read </br>
+	 */
+	public Reader wrap(Reader reader) {
+		return new FilterReader(reader) {
+
+			@Override
+			public int read() throws IOException {
+				int c = super.read();
+				if (c >= 0) {
+					update((char) c);
+				}
+				return c;
+			}
+
+			@Override
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				int n = super.read(buffer, offset, length);
+				for (int i = 0; i < n; i++) {
+					update(buffer[offset + i]);
+				}
+				return n;
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+
+			private void update(char c) {
+				digest.update((byte) (c >>> 8));
+				digest.update((byte) c);
+				inputSize++;
+			}
+		};
+	}
+
+	/**
+	 * @param handler the handler of the parser </br>
+	 * @return a handler counting the statements it passes to handler </br>
+	 */
+	public RDFHandler count(final RDFHandler handler) {
+		return new RDFHandler() {
+
+			@Override
+			public void startRDF() throws RDFHandlerException {
+				handler.startRDF();
+			}
+
+			@Override
+			public void endRDF() throws RDFHandlerException {
+				handler.endRDF();
+			}
+
+			@Override
+			public void handleNamespace(String prefix, String uri) throws RDFHandlerException {
+				handler.handleNamespace(prefix, uri);
+			}
+
+			@Override
+			public void handleStatement(Statement st) throws RDFHandlerException {
+				statementCount++;
+				handler.handleStatement(st);
+			}
+
+			@Override
+			public void handleComment(String comment) throws RDFHandlerException {
+				handler.handleComment(comment);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,311 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Derivative based peak picking for Raman spectra </br>
+ *
+ * Each spectrum is smoothed by a moving average, then local maxima are found </br>
+ * where the first derivative changes its sign from positive to negative. </br>
+ * A maximum is kept as a peak when its height and its prominence over the surrounding </br>
+ * minima exceed the configured fractions of the intensity range of the spectrum. </br>
+ * Smoothing only serves to find the peaks: height, FWHM and area are measured on the raw </br>
+ * intensities, which the moving average would lower and widen for narrow bands. </br>
+ *
+ * Every step walks the spectrum a bounded number of times, so a spectrum </br>
+ * of n points is processed in O(n). Subfiles of a file are processed in parallel. </br>
+ *
+ */
+public class PeakDetector {
+
+	/**
+	 * shared by all parsers, the threads are daemons so they never keep Marmotta alive
+	 */
+	private static final ExecutorService executor = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			new ThreadFactoryBuilder().setNameFormat("spc-peak-%d").setDaemon(true).build());
+
+	private final double minHeight;
+	private final double minProminence;
+	private final int smoothingWindow;
+
+	/**
+	 * @param minHeight minimum peak height, as a fraction of the intensity range </br>
+	 * @param minProminence minimum peak prominence, as a fraction of the intensity range </br>
+	 * @param smoothingWindow width in points of the moving average, 1 disables smoothing </br>
+	 */
+	public PeakDetector(double minHeight, double minProminence, int smoothingWindow) {
+		Preconditions.checkArgument(smoothingWindow > 0, "smoothing window must be positive");
+		this.minHeight = minHeight;
+		this.minProminence = minProminence;
+		this.smoothingWindow = smoothingWindow;
+	}
+
+	/**
+	 * Detecting the peaks of all subfiles of a spectrum in parallel </br>
+	 *
+	 * @param spectrum a decoded spectrum </br>
+	 * @return one list of peaks per subfile, in subfile order </br>
+	 * @throws InterruptedException if the calling thread is interrupted while waiting </br>
+	 */
+	public List<List<Peak>> detectAll(final RamanSpectrum spectrum) throws InterruptedException {
+
+		int count = spectrum.getSubfileCount();
+		if (count == 1) {
+			return Collections.singletonList(detect(spectrum.getWavelength(), spectrum.getSubfile(0)));
+		}
+
+		List<Callable<List<Peak>>> tasks = new ArrayList<Callable<List<Peak>>>(count);
+		for (int i = 0; i < count; i++) {
+			final int subfile = i;
+			tasks.add(new Callable<List<Peak>>() {
+				@Override
+				public List<Peak> call() {
+					return detect(spectrum.getWavelength(), spectrum.getSubfile(subfile));
+				}
+			});
+		}
+
+		List<List<Peak>> result = new ArrayList<List<Peak>>(count);
+		for (Future<List<Peak>> future : executor.invokeAll(tasks)) {
+			try {
+				result.add(future.get());
+			} catch (ExecutionException e) {
+				throw Throwables.propagate(e.getCause());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Detecting the peaks of a single spectrum </br>
+	 *
+	 * @param x the wavelength axis, ascending or descending </br>
+	 * @param y the intensities, same length as x </br>
+	 * @return the peaks ordered by index </br>
+	 */
+	public List<Peak> detect(double[] x, double[] y) {
+
+		Preconditions.checkArgument(x.length == y.length, "axis and intensities differ in length");
+
+		int n = y.length;
+		List<Peak> peaks = new ArrayList<Peak>();
+		if (n < 3) {
+			return peaks;
+		}
+
+		double[] s = smooth(y);
+
+		double min = s[0];
+		double max = s[0];
+		for (double v : s) {
+			if (v < min) min = v;
+			if (v > max) max = v;
+		}
+		double range = max - min;
+		if (range <= 0 || Double.isNaN(range)) {
+			return peaks;
+		}
+		double heightThreshold = min + minHeight * range;
+		double prominenceThreshold = minProminence * range;
+
+		int i = 1;
+		while (i < n - 1) {
+
+			if (!(s[i] > s[i - 1] && s[i] >= s[i + 1])) {
+				i++;
+				continue;
+			}
+
+			//skip a plateau, it is a peak only if the signal goes down after it
+			int end = i;
+			while (end + 1 < n && s[end + 1] == s[i]) {
+				end++;
+			}
+			if (end + 1 < n && s[end + 1] > s[i]) {
+				i = end + 1;
+				continue;
+			}
+			int apex = (i + end) / 2;
+			i = end + 1;
+
+			if (s[apex] < heightThreshold) {
+				continue;
+			}
+
+			//walk down both flanks to the surrounding minima
+			int left = apex;
+			while (left > 0 && s[left - 1] <= s[left]) {
+				left--;
+			}
+			int right = apex;
+			while (right < n - 1 && s[right + 1] <= s[right]) {
+				right++;
+			}
+			double base = Math.max(s[left], s[right]);
+			if (s[apex] - base < prominenceThreshold) {
+				continue;
+			}
+
+			peaks.add(measure(x, y, apex, left, right));
+		}
+		return peaks;
+	}
+
+	/**
+	 * Moving average computed with a running sum, the window shrinks at both ends
+	 */
+	private double[] smooth(double[] y) {
+
+		if (smoothingWindow == 1) {
+			return y;
+		}
+
+		int n = y.length;
+		int half = smoothingWindow / 2;
+		double[] s = new double[n];
+		double sum = 0;
+		int from = 0;
+		int to = -1;
+		for (int i = 0; i < n; i++) {
+			int lo = Math.max(0, i - half);
+			int hi = Math.min(n - 1, i + half);
+			while (to < hi) {
+				sum += y[++to];
+			}
+			while (from < lo) {
+				sum -= y[from++];
+			}
+			s[i] = sum / (hi - lo + 1);
+		}
+		return s;
+	}
+
+	/**
+	 * Measuring a peak found on the smoothed signal on the raw intensities y
+	 */
+	private Peak measure(double[] x, double[] y, int smoothedApex, int left, int right) {
+
+		//the raw apex is the highest point under the moving average window
+		int half = smoothingWindow / 2;
+		int apex = smoothedApex;
+		for (int j = Math.max(left, smoothedApex - half); j <= Math.min(right, smoothedApex + half); j++) {
+			if (y[j] > y[apex]) {
+				apex = j;
+			}
+		}
+		double base = Math.max(y[left], y[right]);
+
+		//parabolic interpolation of the apex
+		double offset = 0;
+		double height = y[apex];
+		if (apex > 0 && apex < y.length - 1 && y[apex - 1] <= y[apex] && y[apex + 1] <= y[apex]) {
+			double a = y[apex - 1];
+			double b = y[apex];
+			double c = y[apex + 1];
+			double denominator = a - 2 * b + c;
+			if (denominator != 0) {
+				offset = 0.5 * (a - c) / denominator;
+				height = b - 0.25 * (a - c) * offset;
+			}
+		}
+		double position = axisAt(x, apex + offset);
+
+		//full width at half of the height above the local baseline
+		double halfHeight = base + (height - base) / 2;
+		int k = apex;
+		while (k > left && y[k - 1] >= halfHeight) {
+			k--;
+		}
+		double lowX = k > left ? axisAt(x, k - 1 + (halfHeight - y[k - 1]) / (y[k] - y[k - 1])) : x[left];
+		k = apex;
+		while (k < right && y[k + 1] >= halfHeight) {
+			k++;
+		}
+		double highX = k < right ? axisAt(x, k + (y[k] - halfHeight) / (y[k] - y[k + 1])) : x[right];
+
+		//trapezoidal area above the local baseline
+		double area = 0;
+		for (int j = left; j < right; j++) {
+			double h0 = Math.max(0, y[j] - base);
+			double h1 = Math.max(0, y[j + 1] - base);
+			area += Math.abs(x[j + 1] - x[j]) * (h0 + h1) / 2;
+		}
+
+		return new Peak(position, height, Math.abs(highX - lowX), area);
+	}
+
+	/**
+	 * Linear interpolation of the axis at a fractional index
+	 */
+	private static double axisAt(double[] x, double index) {
+		int i = (int) Math.floor(index);
+		if (i >= x.length - 1) {
+			return x[x.length - 1];
+		}
+		if (i < 0) {
+			return x[0];
+		}
+		return x[i] + (index - i) * (x[i + 1] - x[i]);
+	}
+
+
+	/**
+	 * A peak found in a spectrum </br>
+	 */
+	public static class Peak {
+
+		private final double position;
+		private final double height;
+		private final double fwhm;
+		private final double area;
+
+		public Peak(double position, double height, double fwhm, double area) {
+			this.position = position;
+			this.height = height;
+			this.fwhm = fwhm;
+			this.area = area;
+		}
+
+		/**
+		 * @return the interpolated wavelength of the apex </br>
+		 */
+		public double getPosition() {
+			return position;
+		}
+
+		/**
+		 * @return the interpolated intensity of the apex </br>
+		 */
+		public double getHeight() {
+			return height;
+		}
+
+		/**
+		 * @return the full width at half maximum, in wavelength units </br>
+		 */
+		public double getFwhm() {
+			return fwhm;
+		}
+
+		/**
+		 * @return the area above the local baseline, between the surrounding minima </br>
+		 */
+		public double getArea() {
+			return area;
+		}
+
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.nio.DoubleBuffer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decoded spectral data of one Raman file </br>
+ *
+ * The wavelength axis is shared by all subfiles (spectra) of the file. </br>
+ * Intensities are kept as an R matrix, i.e. in column-major order: </br>
+ * the intensity of subfile i at wavelength j is stored at index i + j * subfileCount </br>
+ *
+ */
+public class RamanSpectrum {
+
+	private final double[] wavelength;
+	private final DoubleBuffer intensity;
+	private final int subfileCount;
+
+	/**
+	 * @param wavelength the wavelength axis </br>
+	 * @param intensity the intensity matrix in column-major order </br>
+	 */
+	public RamanSpectrum(double[] wavelength, DoubleBuffer intensity) {
+		Preconditions.checkNotNull(wavelength);
+		Preconditions.checkNotNull(intensity);
+		Preconditions.checkArgument(wavelength.length > 0, "empty wavelength axis");
+		Preconditions.checkArgument(intensity.capacity() % wavelength.length == 0,
+				"intensity matrix does not match the wavelength axis");
+		this.wavelength = wavelength;
+		this.intensity = intensity;
+		this.subfileCount = intensity.capacity() / wavelength.length;
+	}
+
+	/**
+	 * @param wavelength the wavelength axis </br>
+	 * @param intensity the intensity matrix in column-major order </br>
+	 */
+	public RamanSpectrum(double[] wavelength, double[] intensity) {
+		this(wavelength, DoubleBuffer.wrap(intensity));
+	}
+
+	public double[] getWavelength() {
+		return wavelength;
+	}
+
+	public int getSubfileCount() {
+		return subfileCount;
+	}
+
+	public int getPointCount() {
+		return wavelength.length;
+	}
+
+	/**
+	 * Copying the intensities of one subfile out of the matrix </br>
+	 *
+	 * @param index index of the subfile, from 0 to {@link #getSubfileCount()} - 1 </br>
+	 * @return a new array of {@link #getPointCount()} intensities </br>
+	 */
+	public double[] getSubfile(int index) {
+		Preconditions.checkElementIndex(index, subfileCount);
+		double[] row = new double[wavelength.length];
+		for (int j = 0; j < row.length; j++) {
+			row[j] = intensity.get(index + j * subfileCount);
+		}
+		return row;
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Memory mapped scratch files holding large arrays off the heap during a parse </br>
+ *
+ * An array spilled to scratch space is written to a temporary file and read back </br>
+ * through the page cache, so it no longer counts against the heap. </br>
+ * Closing the scratch space deletes its files. </br>
+ *
+ */
+public class ScratchSpace implements Closeable {
+
+	private static Logger log = LoggerFactory.getLogger(ScratchSpace.class);
+
+	private final File directory;
+	private final List<File> files = new ArrayList<File>();
+
+	/**
+	 * @param directory the directory of the scratch files, null for the default temporary directory </br>
+	 */
+	public ScratchSpace(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Copying an array to a new scratch file </br>
+	 *
+	 * @param values the array, it can be discarded afterwards </br>
+	 * @return a read-only view of the copy </br>
+	 * @throws IOException if the scratch file cannot be written </br>
+	 */
+	public DoubleBuffer spill(double[] values) throws IOException {
+
+		long size = 8L * values.length;
+		Preconditions.checkArgument(size <= Integer.MAX_VALUE, "array too large for a single mapping");
+
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		File file = File.createTempFile("spc-", ".scratch", directory);
+		files.add(file);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.asDoubleBuffer().put(values);
+			log.info("spilled {} bytes to {}", size, file);
+			return buffer.asDoubleBuffer().asReadOnlyBuffer();
+		} finally {
+			//the mapping stays valid once the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Deleting the scratch files </br>
+	 * A file still mapped cannot be deleted on every platform, it is then deleted when the JVM exits </br>
+	 */
+	@Override
+	public void close() {
+		for (File file : files) {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+		files.clear();
+	}
+
+}
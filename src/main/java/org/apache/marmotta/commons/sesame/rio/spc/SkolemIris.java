@@ -0,0 +1,71 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minting of deterministic IRIs for the property nodes of a file </br>
+ *
+ * The IRI of a node is derived from the acquisition URI, the property key and the number of </br>
+ * times the key was already used for the file, so that importing the same file again </br>
+ * produces the same IRIs while a key repeated within a file gets a distinct IRI per occurrence. </br>
+ * An instance is used for one file at a time and is reset before the next one. </br>
+ *
+ */
+public class SkolemIris {
+
+	//occurrences of each property key of the current file
+	private final Map<String, Integer> occurrences = new HashMap<String, Integer>();
+
+	/**
+	 * Minting the IRI of the next node of a key of root </br>
+	 *
+	 * @param root the acquisition URI </br>
+	 * @param key key value of the property </br>
+	 * @return an IRI below root </br>
+	 */
+	public String mint(String root, String key) {
+
+		String name = root + "|" + key;
+		Integer occurrence = occurrences.get(name);
+		occurrences.put(name, occurrence == null ? 1 : occurrence + 1);
+		if (occurrence != null) {
+			name = name + "|" + occurrence;
+		}
+		return root + "/genid/" + Long.toHexString(fnv1a64(name));
+	}
+
+	/**
+	 * Forgetting the keys of the current file </br>
+	 */
+	public void reset() {
+		occurrences.clear();
+	}
+
+	/**
+	 * @return true if no IRI was minted since the last reset </br>
+	 */
+	public boolean isEmpty() {
+		return occurrences.isEmpty();
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the UTF-16 code units of a string </br>
+	 *
+	 * @param value a string </br>
+	 * @return its hash </br>
+	 */
+	public static long fnv1a64(String value) {
+
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			hash ^= c & 0xff;
+			hash *= 0x100000001b3L;
+			hash ^= c >>> 8;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+}
@@ -4,6 +4,9 @@ package org.apache.marmotta.commons.sesame.rio.spc;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.RDFParserFactory;
+import org.openrdf.rio.RioSetting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @author BUI Thi Diem </br>
@@ -12,16 +15,21 @@ import org.openrdf.rio.RDFParserFactory;
 
 public class SpcParserFactory implements RDFParserFactory{
 
+	private static Logger log = LoggerFactory.getLogger(SpcParserFactory.class);
+
     /**
      * Returns a specific RDFParser instance.
-     */	
+     * Settings of {@link SpcParserSettings} given as system properties are applied to it.
+     */
 	@Override
 	public RDFParser getParser() {
-		return new SpcParser_v2();
+		RDFParser parser = new SpcParser_v2();
+		configure(parser);
+		return parser;
 	}
-	
+
 	/**
-	 * 
+	 *
      * Returns the RDF format for this factory.
      */
 	@Override
@@ -30,4 +38,46 @@ public class SpcParserFactory implements RDFParserFactory{
 		return SpcFormat.FORMAT;
 	}
 
+	/**
+	 * Setting every supported setting whose key is defined as a system property </br>
+	 * The value is converted to the type of the default value of the setting, </br>
+	 * settings without a default value are strings </br>
+	 *
+	 * @param parser a parser </br>
+	 */
+	@SuppressWarnings("unchecked")
+	protected void configure(RDFParser parser) {
+
+		for (RioSetting<?> setting : parser.getSupportedSettings()){
+
+			String property = System.getProperty(setting.getKey());
+			if (property == null)
+				continue;
+
+			Object defaultValue = setting.getDefaultValue();
+			Object value;
+			try {
+				if (defaultValue instanceof Boolean){
+					value = Boolean.valueOf(property);
+				}else if (defaultValue instanceof Integer){
+					value = Integer.valueOf(property);
+				}else if (defaultValue instanceof Long){
+					value = Long.valueOf(property);
+				}else if (defaultValue instanceof Double){
+					value = Double.valueOf(property);
+				}else if (defaultValue == null || defaultValue instanceof String){
+					value = property;
+				}else {
+					log.warn("cannot set {} from a system property", setting.getKey());
+					continue;
+				}
+			} catch (NumberFormatException e) {
+				log.error("invalid value {} for {}", property, setting.getKey());
+				continue;
+			}
+			parser.getParserConfig().set((RioSetting<Object>) setting, value);
+		}
+
+	}
+
 }
@@ -0,0 +1,154 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import org.openrdf.rio.RioSetting;
+import org.openrdf.rio.helpers.RioSettingImpl;
+
+/**
+ * Settings understood by {@link AbstractRamanParser} </br>
+ *
+ * They are read from the {@link org.openrdf.rio.ParserConfig} of the parser, </br>
+ * so they can be set by any component that creates the parser through {@link SpcParserFactory}. </br>
+ * The factory also applies the system properties named after the setting keys, </br>
+ * e.g. -Dorg.apache.marmotta.commons.sesame.rio.spc.arrowexportdir=/data/arrow </br>
+ *
+ */
+public final class SpcParserSettings {
+
+	/**
+	 * Whether peaks are detected on every spectrum and emitted as spc:Peak resources </br>
+	 * Defaults to false, the graph of an import is unchanged unless it is enabled
+	 */
+	public static final RioSetting<Boolean> PEAK_DETECTION = new RioSettingImpl<Boolean>(
+			"org.apache.marmotta.commons.sesame.rio.spc.peakdetection", "Detect and emit Raman peaks", Boolean.FALSE);
+
+	/**
+	 * Minimum peak height, as a fraction of the intensity range of the spectrum </br>
+	 * Defaults to 0.05
+	 */
+	public static final RioSetting<Double> PEAK_MIN_HEIGHT = new RioSettingImpl<Double>(
+			"org.apache.marmotta.commons.sesame.rio.spc.peakminheight", "Minimum relative peak height", 0.05d);
+
+	/**
+	 * Minimum peak prominence over the higher of its two surrounding minima, </br>
+	 * as a fraction of the intensity range of the spectrum </br>
+	 * Defaults to 0.02
+	 */
+	public static final RioSetting<Double> PEAK_MIN_PROMINENCE = new RioSettingImpl<Double>(
+			"org.apache.marmotta.commons.sesame.rio.spc.peakminprominence", "Minimum relative peak prominence", 0.02d);
+
+	/**
+	 * Width in points of the moving average applied before derivation </br>
+	 * Defaults to 5
+	 */
+	public static final RioSetting<Integer> PEAK_SMOOTHING_WINDOW = new RioSettingImpl<Integer>(
+			"org.apache.marmotta.commons.sesame.rio.spc.peaksmoothingwindow", "Peak smoothing window", 5);
+
+	/**
+	 * Directory of the {@link SpectralIndex} fed with the fingerprint of every parsed spectrum </br>
+	 * Defaults to null, no index is maintained
+	 */
+	public static final RioSetting<String> SIMILARITY_INDEX_DIR = new RioSettingImpl<String>(
+			"org.apache.marmotta.commons.sesame.rio.spc.similarityindexdir", "Spectral similarity index directory", null);
+
+	/**
+	 * File of the {@link SpectrumAggregates} updated with every parsed spectrum </br>
+	 * Defaults to null, no aggregate is maintained
+	 */
+	public static final RioSetting<String> AGGREGATE_FILE = new RioSettingImpl<String>(
+			"org.apache.marmotta.commons.sesame.rio.spc.aggregatefile", "Spectrum aggregates file", null);
+
+	/**
+	 * Directory where {@link SpectrumPreviewRenderer} caches the spectrum previews </br>
+	 * Defaults to null, no preview is rendered
+	 */
+	public static final RioSetting<String> PREVIEW_DIR = new RioSettingImpl<String>(
+			"org.apache.marmotta.commons.sesame.rio.spc.previewdir", "Spectrum preview directory", null);
+
+	/**
+	 * Base URL the preview directory is published at, the preview file name is appended to it </br>
+	 * Defaults to null, previews are rendered but not linked: a local file path would not be </br>
+	 * dereferenceable by clients and would disclose the layout of the server
+	 */
+	public static final RioSetting<String> PREVIEW_BASE_URL = new RioSettingImpl<String>(
+			"org.apache.marmotta.commons.sesame.rio.spc.previewbaseurl", "Spectrum preview base URL", null);
+
+	/**
+	 * Directory of the Arrow IPC files {@link ArrowSpectrumWriter} exports every parsed spectrum to </br>
+	 * Defaults to null, no spectrum is exported
+	 */
+	public static final RioSetting<String> ARROW_EXPORT_DIR = new RioSettingImpl<String>(
+			"org.apache.marmotta.commons.sesame.rio.spc.arrowexportdir", "Arrow export directory", null);
+
+	/**
+	 * Size of the spectral arrays written to an Arrow file before a new file is started </br>
+	 * Defaults to 256 MB
+	 */
+	public static final RioSetting<Long> ARROW_MAX_FILE_BYTES = new RioSettingImpl<Long>(
+			"org.apache.marmotta.commons.sesame.rio.spc.arrowmaxfilebytes", "Arrow file size", 256L * 1024 * 1024);
+
+	/**
+	 * Time after which an Arrow file is closed and a new file is started, see {@link ArrowSpectrumWriter} </br>
+	 * The file named by spc:columnarFile can be read at most this long after the parse. Defaults to 1 minute
+	 */
+	public static final RioSetting<Long> ARROW_MAX_FILE_MILLIS = new RioSettingImpl<Long>(
+			"org.apache.marmotta.commons.sesame.rio.spc.arrowmaxfilemillis", "Arrow file duration", 60L * 1000);
+
+	/**
+	 * Whether the wavelength and intensity arrays are left out of the graph when they are exported to Arrow </br>
+	 * The Arrow file of every spectrum is then closed and synced before the parse returns, so files hold </br>
+	 * a single spectrum and the size and time limits do not apply, </br>
+	 * and the parse fails if the spectrum cannot be exported. Defaults to false
+	 */
+	public static final RioSetting<Boolean> ARROW_CATALOG_ONLY = new RioSettingImpl<Boolean>(
+			"org.apache.marmotta.commons.sesame.rio.spc.arrowcatalogonly", "Keep only catalog metadata in the graph", Boolean.FALSE);
+
+	/**
+	 * Heap shared by all concurrent parses, see {@link ParseMemoryBudget} </br>
+	 * The budget is created with the value of the first parse, defaults to 512 MB
+	 */
+	public static final RioSetting<Long> MEMORY_BUDGET_BYTES = new RioSettingImpl<Long>(
+			"org.apache.marmotta.commons.sesame.rio.spc.memorybudgetbytes", "Parse memory budget", 512L * 1024 * 1024);
+
+	/**
+	 * Estimated heap held by a parse per byte of input: the R object, the copies of the arrays </br>
+	 * and their literals. Defaults to 16
+	 */
+	public static final RioSetting<Long> MEMORY_PER_DATA_BYTE = new RioSettingImpl<Long>(
+			"org.apache.marmotta.commons.sesame.rio.spc.memoryperdatabyte", "Heap per input byte", 16L);
+
+	/**
+	 * Size over which the intensities of a file are kept in a memory mapped scratch file </br>
+	 * instead of the heap. Wavelength and intensity arrays over this size are not added to the graph </br>
+	 * as literals, their text would take several times their size. Defaults to 64 MB
+	 */
+	public static final RioSetting<Long> SPILL_THRESHOLD_BYTES = new RioSettingImpl<Long>(
+			"org.apache.marmotta.commons.sesame.rio.spc.spillthresholdbytes", "Spill threshold", 64L * 1024 * 1024);
+
+	/**
+	 * Directory of the scratch files </br>
+	 * Defaults to null, the temporary directory of the JVM
+	 */
+	public static final RioSetting<String> SCRATCH_DIR = new RioSettingImpl<String>(
+			"org.apache.marmotta.commons.sesame.rio.spc.scratchdir", "Scratch directory", null);
+
+	/**
+	 * Whether property nodes are deterministic IRIs derived from the acquisition URI and the property key </br>
+	 * instead of blank nodes, so that re-imported files produce the same statements. Defaults to false </br>
+	 * Only parsers that create property nodes honour it, i.e. {@link SpcParser_v1} on SPC files. </br>
+	 * {@link SpcParser_v2}, the one {@link SpcParserFactory} returns, adds the properties to the acquisition </br>
+	 * node directly, so the setting has no effect there and a warning is logged for every file
+	 */
+	public static final RioSetting<Boolean> SKOLEM_IRIS = new RioSettingImpl<Boolean>(
+			"org.apache.marmotta.commons.sesame.rio.spc.skolemiris", "Mint skolem IRIs for property nodes", Boolean.FALSE);
+
+	/**
+	 * Whether a PROV-O activity with the parser, the input and the stage timings is added for every file </br>
+	 * Defaults to false
+	 */
+	public static final RioSetting<Boolean> PROVENANCE = new RioSettingImpl<Boolean>(
+			"org.apache.marmotta.commons.sesame.rio.spc.provenance", "Record parse provenance", Boolean.FALSE);
+
+	private SpcParserSettings() {
+	}
+
+}
@@ -34,7 +34,7 @@ public class SpcParser_v1 extends AbstractRamanParser{
 			//don't add hyperSpec info to the ontology
 			  //if (value.equals("hyperSpec")) return;
 			  key = key.replaceAll("\"", "");
-			  Resource r_node = createBNode();
+			  Resource r_node = createPropertyNode(root, key);
 		      URI node_key = createURI(NS_SPC + key.toLowerCase());
 		      //dcat:mediaType
 		      URI node_type     = createURI(NS_RDF + "type");
@@ -82,7 +82,7 @@ public class SpcParser_v1 extends AbstractRamanParser{
 			throws RDFParseException, RDFHandlerException {
 		
 	      URI node_key = createURI(NS_SPC + key);
-	      Resource r_node = createBNode();
+	      Resource r_node = createPropertyNode(root, key);
 	      
 	      //add key, value and description as its properties 
 	      URI key_name = createURI(NS_SPC + "name");
@@ -0,0 +1,449 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * Embedded index of spectral fingerprints answering nearest neighbour queries </br>
+ *
+ * Every indexed acquisition is reduced to a fingerprint by {@link SpectrumBinning}: </br>
+ * its mean spectrum binned, centered and scaled to unit length. The fingerprint is hashed </br>
+ * to 64 bits by random hyperplane LSH, so the Hamming distance of two signatures estimates </br>
+ * the angle between the fingerprints. A query scans the signatures, keeps the closest </br>
+ * candidates and ranks them by the exact correlation of their fingerprints. </br>
+ *
+ * The index lives in a directory with two files: </br>
+ * fingerprints.bin, memory mapped, holds a header followed by one record (signature, fingerprint) </br>
+ * per acquisition, uris.txt holds the acquisition URIs, one per line, in record order. </br>
+ * Records are appended as files are parsed, a re-imported acquisition overwrites its record. </br>
+ * The records are mapped in segments of at most 2 GB, so the size of the index is only bounded </br>
+ * by the heap holding the URIs and the 64 bit signatures (about 100 bytes per acquisition). </br>
+ *
+ * Use {@link #open(File)} to get the index shared by every parser of the JVM for a directory. </br>
+ *
+ */
+public class SpectralIndex implements Closeable {
+
+	public static final double DEFAULT_FROM = 400;
+	public static final double DEFAULT_TO = 3400;
+	public static final int DEFAULT_BINS = 256;
+
+	private static final int MAGIC = 0x53504349; // SPCI
+	private static final int HEADER_SIZE = 32;
+	private static final int SIGNATURE_BITS = 64;
+	private static final long HYPERPLANE_SEED = 0x5350434C5348L;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int CANDIDATES_PER_RESULT = 32;
+	//the largest array of signatures a JVM allocates
+	private static final int MAX_RECORDS = Integer.MAX_VALUE - 8;
+
+	private static final Map<File, SpectralIndex> instances = new HashMap<File, SpectralIndex>();
+
+	private static Logger log = LoggerFactory.getLogger(SpectralIndex.class);
+
+	private final SpectrumBinning binning;
+	private final float[][] hyperplanes;
+	private final int recordSize;
+	private final int segmentRecords;
+
+	private final RandomAccessFile file;
+	private final Writer uriWriter;
+	private MappedByteBuffer header;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private long capacity;
+
+	private final List<String> uris = new ArrayList<String>();
+	private final Map<String, Integer> positions = new HashMap<String, Integer>();
+	private long[] signatures;
+
+	/**
+	 * Returning the index stored in a directory, opening or creating it with the default grid </br>
+	 * The same instance is returned for the same directory until it is closed </br>
+	 *
+	 * @param directory the directory of the index </br>
+	 * @return the shared index </br>
+	 * @throws IOException if the index cannot be read or created </br>
+	 */
+	public static SpectralIndex open(File directory) throws IOException {
+		File key = directory.getCanonicalFile();
+		synchronized (instances) {
+			SpectralIndex index = instances.get(key);
+			if (index == null) {
+				index = new SpectralIndex(key, new SpectrumBinning(DEFAULT_FROM, DEFAULT_TO, DEFAULT_BINS));
+				instances.put(key, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Opening or creating an index in a directory </br>
+	 *
+	 * @param directory the directory of the index </br>
+	 * @param binning the grid of the fingerprints, it must be the one the index was created with </br>
+	 * @throws IOException if the index cannot be read or created </br>
+	 */
+	public SpectralIndex(File directory, SpectrumBinning binning) throws IOException {
+		this(directory, binning, Integer.MAX_VALUE / (8 + 4 * binning.getBins()));
+	}
+
+	/**
+	 * @param directory the directory of the index </br>
+	 * @param binning the grid of the fingerprints, it must be the one the index was created with </br>
+	 * @param segmentRecords the number of records per mapped segment </br>
+	 * @throws IOException if the index cannot be read or created </br>
+	 */
+	SpectralIndex(File directory, SpectrumBinning binning, int segmentRecords) throws IOException {
+
+		this.binning = binning;
+		this.recordSize = 8 + 4 * binning.getBins();
+		Preconditions.checkArgument(segmentRecords > 0 && (long) segmentRecords * recordSize <= Integer.MAX_VALUE,
+				"a segment must hold between 1 record and 2 GB");
+		this.segmentRecords = segmentRecords;
+		this.hyperplanes = new float[SIGNATURE_BITS][binning.getBins()];
+		Random random = new Random(HYPERPLANE_SEED);
+		for (float[] hyperplane : hyperplanes) {
+			for (int b = 0; b < hyperplane.length; b++) {
+				hyperplane[b] = (float) random.nextGaussian();
+			}
+		}
+
+		directory.mkdirs();
+		File data = new File(directory, "fingerprints.bin");
+		File uriFile = new File(directory, "uris.txt");
+		boolean created = !data.exists() || data.length() < HEADER_SIZE;
+
+		file = new RandomAccessFile(data, "rw");
+		try {
+			long count = 0;
+			if (created) {
+				map(Math.min(INITIAL_CAPACITY, segmentRecords));
+				header.putInt(0, MAGIC);
+				header.putInt(4, binning.getBins());
+				header.putDouble(8, binning.getFrom());
+				header.putDouble(16, binning.getTo());
+				header.putLong(24, 0);
+			} else {
+				map(Math.max(Math.min(INITIAL_CAPACITY, segmentRecords), (data.length() - HEADER_SIZE) / recordSize));
+				Preconditions.checkState(header.getInt(0) == MAGIC, "%s is not a spectral index", data);
+				Preconditions.checkState(header.getInt(4) == binning.getBins()
+						&& header.getDouble(8) == binning.getFrom() && header.getDouble(16) == binning.getTo(),
+						"%s was created with another wavelength grid", data);
+				count = header.getLong(24);
+				Preconditions.checkState(count >= 0 && count <= capacity, "%s has a corrupt record count", data);
+			}
+
+			//the header count is written last, ignore URIs of a record that was never completed
+			if (uriFile.exists()) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(uriFile), Charsets.UTF_8));
+				try {
+					String line;
+					while (uris.size() < count && (line = reader.readLine()) != null) {
+						positions.put(line, uris.size());
+						uris.add(line);
+					}
+				} finally {
+					reader.close();
+				}
+			}
+			Preconditions.checkState(uris.size() == count, "%s lists fewer URIs than indexed records", uriFile);
+			rewriteUris(uriFile);
+		} catch (IOException | RuntimeException e) {
+			//a corrupt index must not keep its file open
+			file.close();
+			throw e;
+		}
+		uriWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(uriFile, true), Charsets.UTF_8));
+
+		signatures = new long[Math.max(INITIAL_CAPACITY, uris.size())];
+		for (int i = 0; i < uris.size(); i++) {
+			signatures[i] = segment(i).getLong(offset(i));
+		}
+		log.info("opened spectral index {} with {} acquisitions", directory, uris.size());
+	}
+
+	/**
+	 * Adding the fingerprint of an acquisition, or replacing it if the acquisition is already indexed </br>
+	 *
+	 * @param uri the acquisition URI </br>
+	 * @param spectrum its decoded spectrum </br>
+	 * @throws IOException if the index cannot be written </br>
+	 */
+	public synchronized void add(String uri, RamanSpectrum spectrum) throws IOException {
+
+		Preconditions.checkArgument(uri.indexOf('\n') < 0 && uri.indexOf('\r') < 0, "URI contains a line break");
+
+		float[] fingerprint = SpectrumBinning.fingerprint(binning.bin(spectrum));
+		long signature = signature(fingerprint);
+
+		Integer position = positions.get(uri);
+		if (position == null) {
+			position = uris.size();
+			Preconditions.checkState(position < MAX_RECORDS, "spectral index is full");
+			if (position == capacity) {
+				map(capacity < segmentRecords ? Math.min(2 * capacity, segmentRecords) : capacity + segmentRecords);
+			}
+			if (position == signatures.length) {
+				long[] grown = new long[(int) Math.min(MAX_RECORDS, 2L * signatures.length)];
+				System.arraycopy(signatures, 0, grown, 0, signatures.length);
+				signatures = grown;
+			}
+			uriWriter.write(uri);
+			uriWriter.write('\n');
+			uriWriter.flush();
+		}
+
+		write(position, signature, fingerprint);
+		signatures[position] = signature;
+
+		if (position == uris.size()) {
+			positions.put(uri, position);
+			uris.add(uri);
+			header.putLong(24, uris.size());
+		}
+	}
+
+	/**
+	 * Finding the indexed acquisitions whose spectrum is the most similar to a spectrum </br>
+	 *
+	 * @param spectrum a decoded spectrum </br>
+	 * @param k the maximum number of results </br>
+	 * @return the matches, most similar first </br>
+	 */
+	public synchronized List<Match> nearest(RamanSpectrum spectrum, int k) {
+		return nearest(SpectrumBinning.fingerprint(binning.bin(spectrum)), k, -1);
+	}
+
+	/**
+	 * Finding the indexed acquisitions whose spectrum is the most similar to an indexed acquisition </br>
+	 *
+	 * @param uri an indexed acquisition URI </br>
+	 * @param k the maximum number of results </br>
+	 * @return the matches, most similar first, without the acquisition itself, </br>
+	 * an empty list if the acquisition is not indexed </br>
+	 */
+	public synchronized List<Match> nearest(String uri, int k) {
+		Integer position = positions.get(uri);
+		if (position == null) {
+			return Collections.emptyList();
+		}
+		return nearest(read(position), k, position);
+	}
+
+	/**
+	 * @return the number of indexed acquisitions </br>
+	 */
+	public synchronized int size() {
+		return uris.size();
+	}
+
+	/**
+	 * Writing the mapped records to disk </br>
+	 */
+	public synchronized void flush() {
+		header.force();
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (instances) {
+			instances.values().remove(this);
+		}
+		synchronized (this) {
+			flush();
+			uriWriter.close();
+			file.close();
+		}
+	}
+
+	private List<Match> nearest(float[] fingerprint, int k, int excluded) {
+
+		Preconditions.checkArgument(k > 0, "k must be positive");
+		int count = uris.size();
+		long signature = signature(fingerprint);
+
+		//keep the candidates with the smallest Hamming distance, counting distances first
+		int[] histogram = new int[SIGNATURE_BITS + 1];
+		for (int i = 0; i < count; i++) {
+			histogram[Long.bitCount(signature ^ signatures[i])]++;
+		}
+		int wanted = k * CANDIDATES_PER_RESULT;
+		int threshold = 0;
+		for (int total = histogram[0]; threshold < SIGNATURE_BITS && total < wanted; ) {
+			total += histogram[++threshold];
+		}
+
+		PriorityQueue<Match> best = new PriorityQueue<Match>(k + 1);
+		for (int i = 0; i < count; i++) {
+			if (i == excluded || Long.bitCount(signature ^ signatures[i]) > threshold) {
+				continue;
+			}
+			float similarity = 0;
+			MappedByteBuffer segment = segment(i);
+			int base = offset(i) + 8;
+			for (int b = 0; b < fingerprint.length; b++) {
+				similarity += fingerprint[b] * segment.getFloat(base + 4 * b);
+			}
+			best.add(new Match(uris.get(i), similarity));
+			if (best.size() > k) {
+				best.poll();
+			}
+		}
+
+		List<Match> result = new ArrayList<Match>(best);
+		Collections.sort(result, Collections.reverseOrder());
+		return result;
+	}
+
+	private long signature(float[] fingerprint) {
+		long signature = 0;
+		for (int bit = 0; bit < SIGNATURE_BITS; bit++) {
+			float[] hyperplane = hyperplanes[bit];
+			float dot = 0;
+			for (int b = 0; b < fingerprint.length; b++) {
+				dot += hyperplane[b] * fingerprint[b];
+			}
+			if (dot >= 0) {
+				signature |= 1L << bit;
+			}
+		}
+		return signature;
+	}
+
+	private void write(int position, long signature, float[] fingerprint) {
+		MappedByteBuffer segment = segment(position);
+		int base = offset(position);
+		segment.putLong(base, signature);
+		for (int b = 0; b < fingerprint.length; b++) {
+			segment.putFloat(base + 8 + 4 * b, fingerprint[b]);
+		}
+	}
+
+	private float[] read(int position) {
+		MappedByteBuffer segment = segment(position);
+		int base = offset(position) + 8;
+		float[] fingerprint = new float[binning.getBins()];
+		for (int b = 0; b < fingerprint.length; b++) {
+			fingerprint[b] = segment.getFloat(base + 4 * b);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @return the mapped segment holding a record </br>
+	 */
+	private MappedByteBuffer segment(int position) {
+		return segments.get(position / segmentRecords);
+	}
+
+	/**
+	 * @return the offset of a record in its segment </br>
+	 */
+	private int offset(int position) {
+		return (position % segmentRecords) * recordSize;
+	}
+
+	/**
+	 * Growing the file and mapping it up to a number of records </br>
+	 * Full segments are mapped once, only the last segment is mapped again when it grows </br>
+	 */
+	private void map(long records) throws IOException {
+		long size = HEADER_SIZE + records * recordSize;
+		if (file.length() < size) {
+			file.setLength(size);
+		}
+		FileChannel channel = file.getChannel();
+		if (header == null) {
+			header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		}
+		if (!segments.isEmpty() && capacity % segmentRecords != 0) {
+			segments.remove(segments.size() - 1);
+		}
+		while ((long) segments.size() * segmentRecords < records) {
+			long first = (long) segments.size() * segmentRecords;
+			long count = Math.min(segmentRecords, records - first);
+			segments.add(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * recordSize, count * recordSize));
+		}
+		capacity = records;
+	}
+
+	/**
+	 * Dropping the URIs of incomplete records from the URI file before appending to it
+	 */
+	private void rewriteUris(File uriFile) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(uriFile), Charsets.UTF_8));
+		try {
+			for (String uri : uris) {
+				writer.write(uri);
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+
+	/**
+	 * An indexed acquisition and the correlation of its fingerprint with the query </br>
+	 */
+	public static class Match implements Comparable<Match> {
+
+		private final String uri;
+		private final float similarity;
+
+		public Match(String uri, float similarity) {
+			this.uri = uri;
+			this.similarity = similarity;
+		}
+
+		public String getUri() {
+			return uri;
+		}
+
+		/**
+		 * @return the correlation of the fingerprints, from -1 to 1 </br>
+		 */
+		public float getSimilarity() {
+			return similarity;
+		}
+
+		@Override
+		public int compareTo(Match other) {
+			return Float.compare(similarity, other.similarity);
+		}
+
+		@Override
+		public String toString() {
+			return uri + " (" + similarity + ")";
+		}
+
+	}
+
+}
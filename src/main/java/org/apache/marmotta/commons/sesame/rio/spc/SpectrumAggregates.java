@@ -0,0 +1,441 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Running mean and variance spectra per group of acquisitions </br>
+ *
+ * A group is identified by the volunteer, the day and the skin specification extracted </br>
+ * from the file name, e.g. V12_J1_T. Every parsed spectrum is binned by {@link SpectrumBinning} </br>
+ * and folded into its group with Welford's algorithm, bin by bin, so that no second pass </br>
+ * over the spectra is needed. </br>
+ *
+ * Each acquisition contributes once: when it is imported again its previous contribution is removed </br>
+ * from its group (Welford's update run backwards) before the new one is added. Updates are thus </br>
+ * idempotent, as a recomputation of the groups from the stored spectra would be. </br>
+ *
+ * The file is a log of contributions appended after every update, the groups are rebuilt </br>
+ * from it when it is loaded. The binned spectra stay in the log, the heap only holds the groups </br>
+ * and the offset of the last record of every acquisition URI, about 100 bytes per acquisition. </br>
+ * A previous contribution is read back from the log only when its acquisition is imported again. </br>
+ * The log is compacted once it holds twice as many records as acquisitions. </br>
+ * Use {@link #open(File)} to get the aggregates shared by every parser of the JVM for a file. </br>
+ *
+ */
+public class SpectrumAggregates {
+
+	private static final int MAGIC = 0x53504341; // SPCA
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 28;
+	private static final int MIN_COMPACTION_RECORDS = 1024;
+
+	private static final Map<File, SpectrumAggregates> instances = new HashMap<File, SpectrumAggregates>();
+
+	private static Logger log = LoggerFactory.getLogger(SpectrumAggregates.class);
+
+	private final File file;
+	private final SpectrumBinning binning;
+	private final Map<String, Group> groups = new HashMap<String, Group>();
+	//offset in the log of the current contribution of every acquisition URI
+	private final Map<String, Long> offsets = new HashMap<String, Long>();
+	private long records;
+
+	/**
+	 * Returning the aggregates stored in a file, loading them or starting empty with the default grid </br>
+	 *
+	 * @param file the file of the aggregates </br>
+	 * @return the shared aggregates </br>
+	 * @throws IOException if the file cannot be read </br>
+	 */
+	public static SpectrumAggregates open(File file) throws IOException {
+		File key = file.getCanonicalFile();
+		synchronized (instances) {
+			SpectrumAggregates aggregates = instances.get(key);
+			if (aggregates == null) {
+				aggregates = new SpectrumAggregates(key, new SpectrumBinning(
+						SpectralIndex.DEFAULT_FROM, SpectralIndex.DEFAULT_TO, SpectralIndex.DEFAULT_BINS));
+				instances.put(key, aggregates);
+			}
+			return aggregates;
+		}
+	}
+
+	/**
+	 * Loading the aggregates of a file, or starting empty if the file does not exist </br>
+	 *
+	 * @param file the file of the aggregates </br>
+	 * @param binning the grid of the aggregates, it must be the one the file was written with </br>
+	 * @throws IOException if the file cannot be read </br>
+	 */
+	public SpectrumAggregates(File file, SpectrumBinning binning) throws IOException {
+		this.file = file;
+		this.binning = binning;
+		if (file.exists()) {
+			load();
+			log.info("loaded {} spectrum aggregates of {} acquisitions from {}", groups.size(), offsets.size(), file);
+		} else {
+			compact();
+		}
+	}
+
+	public SpectrumBinning getBinning() {
+		return binning;
+	}
+
+	/**
+	 * Folding the spectrum of an acquisition into its group and saving it </br>
+	 * The previous contribution of the acquisition, if any, is removed first </br>
+	 *
+	 * @param uri the acquisition URI </br>
+	 * @param key the group key </br>
+	 * @param spectrum a decoded spectrum, its subfiles are averaged </br>
+	 * @return a copy of the group after the update </br>
+	 * @throws IOException if the aggregates cannot be saved </br>
+	 */
+	public synchronized Group update(String uri, String key, RamanSpectrum spectrum) throws IOException {
+
+		//kept as floats, the values removed later must be exactly the values added
+		double[] binned = binning.bin(spectrum);
+		float[] values = new float[binned.length];
+		for (int b = 0; b < binned.length; b++) {
+			values[b] = (float) binned[b];
+		}
+		Contribution contribution = new Contribution(key, System.currentTimeMillis(), values);
+
+		Long previous = offsets.get(uri);
+		Contribution replaced = previous == null ? null : readAt(previous);
+		long offset = append(uri, contribution);
+		apply(uri, contribution, offset, replaced);
+
+		if (records >= MIN_COMPACTION_RECORDS && records > 2L * offsets.size()) {
+			compact();
+		}
+		return groups.get(key).copy();
+	}
+
+	/**
+	 * @param key a group key </br>
+	 * @return a copy of the group, null if no spectrum was folded into it </br>
+	 */
+	public synchronized Group get(String key) {
+		Group group = groups.get(key);
+		return group == null ? null : group.copy();
+	}
+
+	/**
+	 * @return the number of acquisitions folded into the groups </br>
+	 */
+	public synchronized int size() {
+		return offsets.size();
+	}
+
+	/**
+	 * @param offset where the contribution is in the log </br>
+	 * @param replaced the previous contribution of the acquisition, null if there is none </br>
+	 */
+	private void apply(String uri, Contribution contribution, long offset, Contribution replaced) {
+
+		if (replaced != null) {
+			Group group = groups.get(replaced.key);
+			group.remove(replaced.values);
+			if (group.count == 0) {
+				groups.remove(replaced.key);
+			}
+		}
+
+		Group group = groups.get(contribution.key);
+		if (group == null) {
+			group = new Group(contribution.key, binning.getBins());
+			groups.put(contribution.key, group);
+		}
+		group.add(contribution.values, contribution.time);
+		offsets.put(uri, offset);
+	}
+
+	/**
+	 * Replaying the log, a record cut by a crash is dropped
+	 */
+	private void load() throws IOException {
+
+		long valid = HEADER_SIZE;
+		CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+		DataInputStream in = new DataInputStream(counting);
+		try {
+			Preconditions.checkState(in.readInt() == MAGIC, "%s does not contain spectrum aggregates", file);
+			Preconditions.checkState(in.readInt() == VERSION, "%s was written by another version, delete it to start over", file);
+			Preconditions.checkState(in.readInt() == binning.getBins()
+					&& in.readDouble() == binning.getFrom() && in.readDouble() == binning.getTo(),
+					"%s was written with another wavelength grid", file);
+			//a header cut short is an error, a record cut short is the end of the log
+			try {
+				while (valid < file.length()) {
+					String uri = in.readUTF();
+					Contribution contribution = read(in);
+					Long previous = offsets.get(uri);
+					apply(uri, contribution, valid, previous == null ? null : readAt(previous));
+					records++;
+					valid = counting.getCount();
+				}
+			} catch (EOFException e) {
+				log.warn("dropping an incomplete record at the end of {}", file);
+			}
+		} finally {
+			in.close();
+		}
+
+		if (valid < file.length()) {
+			truncate(valid);
+		}
+	}
+
+	/**
+	 * @return the offset of the appended record </br>
+	 */
+	private long append(String uri, Contribution contribution) throws IOException {
+		long length = file.length();
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+			try {
+				write(out, uri, contribution);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			//drop a partial record, the next one must start where it started
+			truncate(length);
+			throw e;
+		}
+		records++;
+		return length;
+	}
+
+	/**
+	 * Reading back the contribution of the record at an offset of the log
+	 */
+	private Contribution readAt(long offset) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return readAt(raf, offset);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private Contribution readAt(RandomAccessFile raf, long offset) throws IOException {
+		raf.seek(offset);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+		in.readUTF();
+		return read(in);
+	}
+
+	/**
+	 * Reading a record after its URI
+	 */
+	private Contribution read(DataInputStream in) throws IOException {
+		String key = in.readUTF();
+		long time = in.readLong();
+		float[] values = new float[binning.getBins()];
+		for (int b = 0; b < values.length; b++) {
+			values[b] = in.readFloat();
+		}
+		return new Contribution(key, time, values);
+	}
+
+	private void truncate(long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Rewriting the log with the current contribution of every acquisition, copied record by record </br>
+	 * Writing to a temporary file first, so a crash never leaves a truncated file behind </br>
+	 */
+	private void compact() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		Map<String, Long> compacted = new HashMap<String, Long>();
+		RandomAccessFile raf = offsets.isEmpty() ? null : new RandomAccessFile(file, "r");
+		CountingOutputStream counting = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		DataOutputStream out = new DataOutputStream(counting);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(binning.getBins());
+			out.writeDouble(binning.getFrom());
+			out.writeDouble(binning.getTo());
+			for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+				out.flush();
+				compacted.put(entry.getKey(), counting.getCount());
+				write(out, entry.getKey(), readAt(raf, entry.getValue()));
+			}
+		} finally {
+			out.close();
+			if (raf != null) {
+				raf.close();
+			}
+		}
+		if (!tmp.renameTo(file)) {
+			//renameTo does not replace an existing file on every platform
+			if (!file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("cannot replace " + file);
+			}
+		}
+		offsets.putAll(compacted);
+		records = offsets.size();
+	}
+
+	private static void write(DataOutputStream out, String uri, Contribution contribution) throws IOException {
+		out.writeUTF(uri);
+		out.writeUTF(contribution.key);
+		out.writeLong(contribution.time);
+		for (float value : contribution.values) {
+			out.writeFloat(value);
+		}
+	}
+
+
+	/**
+	 * The binned spectrum an acquisition added to its group
+	 */
+	private static class Contribution {
+
+		private final String key;
+		private final long time;
+		private final float[] values;
+
+		private Contribution(String key, long time, float[] values) {
+			this.key = key;
+			this.time = time;
+			this.values = values;
+		}
+
+	}
+
+
+	/**
+	 * Running statistics of one group </br>
+	 */
+	public static class Group {
+
+		private final String key;
+		private long count;
+		private long lastUpdated;
+		private final long[] binCount;
+		private final double[] mean;
+		private final double[] m2;
+
+		private Group(String key, int bins) {
+			this.key = key;
+			this.binCount = new long[bins];
+			this.mean = new double[bins];
+			this.m2 = new double[bins];
+		}
+
+		private void add(float[] binned, long time) {
+			count++;
+			lastUpdated = Math.max(lastUpdated, time);
+			for (int b = 0; b < binned.length; b++) {
+				if (Float.isNaN(binned[b])) {
+					continue;
+				}
+				long n = ++binCount[b];
+				double delta = binned[b] - mean[b];
+				mean[b] += delta / n;
+				m2[b] += delta * (binned[b] - mean[b]);
+			}
+		}
+
+		private void remove(float[] binned) {
+			count--;
+			for (int b = 0; b < binned.length; b++) {
+				if (Float.isNaN(binned[b])) {
+					continue;
+				}
+				long n = --binCount[b];
+				if (n == 0) {
+					mean[b] = 0;
+					m2[b] = 0;
+					continue;
+				}
+				double delta = binned[b] - mean[b];
+				mean[b] -= delta / n;
+				//rounding must not make the variance negative
+				m2[b] = Math.max(0, m2[b] - delta * (binned[b] - mean[b]));
+			}
+		}
+
+		private Group copy() {
+			Group copy = new Group(key, mean.length);
+			copy.count = count;
+			copy.lastUpdated = lastUpdated;
+			System.arraycopy(binCount, 0, copy.binCount, 0, binCount.length);
+			System.arraycopy(mean, 0, copy.mean, 0, mean.length);
+			System.arraycopy(m2, 0, copy.m2, 0, m2.length);
+			return copy;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the number of acquisitions folded into the group </br>
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the time of the last update, in milliseconds since the epoch </br>
+		 */
+		public long getLastUpdated() {
+			return lastUpdated;
+		}
+
+		/**
+		 * @return the mean intensity of every bin, NaN for bins no spectrum covered </br>
+		 */
+		public double[] getMean() {
+			double[] result = new double[mean.length];
+			for (int b = 0; b < mean.length; b++) {
+				result[b] = binCount[b] > 0 ? mean[b] : Double.NaN;
+			}
+			return result;
+		}
+
+		/**
+		 * @return the sample standard deviation of every bin, NaN for bins covered less than twice </br>
+		 */
+		public double[] getStandardDeviation() {
+			double[] result = new double[m2.length];
+			for (int b = 0; b < m2.length; b++) {
+				result[b] = binCount[b] > 1 ? Math.sqrt(m2[b] / (binCount[b] - 1)) : Double.NaN;
+			}
+			return result;
+		}
+
+	}
+
+}
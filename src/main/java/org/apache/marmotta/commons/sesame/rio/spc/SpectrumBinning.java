@@ -0,0 +1,135 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Resampling of a spectrum onto a fixed grid of wavelength bins </br>
+ *
+ * The grid covers [from, to) with equally sized bins. The value of a bin is the mean </br>
+ * of the intensities whose wavelength falls into it, or NaN when no point falls into it. </br>
+ * Spectra with different axes become comparable point by point once they are binned. </br>
+ *
+ */
+public class SpectrumBinning {
+
+	private final double from;
+	private final double to;
+	private final int bins;
+
+	/**
+	 * @param from lower bound of the grid, inclusive </br>
+	 * @param to upper bound of the grid, exclusive </br>
+	 * @param bins number of bins </br>
+	 */
+	public SpectrumBinning(double from, double to, int bins) {
+		Preconditions.checkArgument(to > from, "empty wavelength range");
+		Preconditions.checkArgument(bins > 0, "number of bins must be positive");
+		this.from = from;
+		this.to = to;
+		this.bins = bins;
+	}
+
+	public double getFrom() {
+		return from;
+	}
+
+	public double getTo() {
+		return to;
+	}
+
+	public int getBins() {
+		return bins;
+	}
+
+	/**
+	 * Binning a single spectrum </br>
+	 *
+	 * @param x the wavelength axis, in any order </br>
+	 * @param y the intensities, same length as x </br>
+	 * @return the mean intensity of every bin, NaN for empty bins </br>
+	 */
+	public double[] bin(double[] x, double[] y) {
+
+		Preconditions.checkArgument(x.length == y.length, "axis and intensities differ in length");
+
+		double[] sum = new double[bins];
+		int[] count = new int[bins];
+		double scale = bins / (to - from);
+		for (int i = 0; i < x.length; i++) {
+			if (x[i] < from || x[i] >= to || Double.isNaN(y[i])) {
+				continue;
+			}
+			int b = Math.min(bins - 1, (int) ((x[i] - from) * scale));
+			sum[b] += y[i];
+			count[b]++;
+		}
+		for (int b = 0; b < bins; b++) {
+			sum[b] = count[b] > 0 ? sum[b] / count[b] : Double.NaN;
+		}
+		return sum;
+	}
+
+	/**
+	 * Binning the mean spectrum of all subfiles of a spectrum </br>
+	 *
+	 * @param spectrum a decoded spectrum </br>
+	 * @return the mean intensity of every bin, NaN for empty bins </br>
+	 */
+	public double[] bin(RamanSpectrum spectrum) {
+
+		int count = spectrum.getSubfileCount();
+		if (count == 1) {
+			return bin(spectrum.getWavelength(), spectrum.getSubfile(0));
+		}
+
+		double[] mean = new double[spectrum.getPointCount()];
+		for (int i = 0; i < count; i++) {
+			double[] row = spectrum.getSubfile(i);
+			for (int j = 0; j < row.length; j++) {
+				mean[j] += row[j] / count;
+			}
+		}
+		return bin(spectrum.getWavelength(), mean);
+	}
+
+	/**
+	 * Centering a binned spectrum on its mean and scaling it to unit length, </br>
+	 * so that the dot product of two fingerprints is their correlation </br>
+	 *
+	 * @param binned the output of {@link #bin(double[], double[])} </br>
+	 * @return a fingerprint, empty bins count as the mean, all zeros for a flat spectrum </br>
+	 */
+	public static float[] fingerprint(double[] binned) {
+
+		double mean = 0;
+		int count = 0;
+		for (double v : binned) {
+			if (!Double.isNaN(v)) {
+				mean += v;
+				count++;
+			}
+		}
+		float[] result = new float[binned.length];
+		if (count == 0) {
+			return result;
+		}
+		mean /= count;
+
+		double norm = 0;
+		for (double v : binned) {
+			if (!Double.isNaN(v)) {
+				norm += (v - mean) * (v - mean);
+			}
+		}
+		if (norm == 0) {
+			return result;
+		}
+		norm = Math.sqrt(norm);
+
+		for (int b = 0; b < binned.length; b++) {
+			result[b] = Double.isNaN(binned[b]) ? 0f : (float) ((binned[b] - mean) / norm);
+		}
+		return result;
+	}
+
+}
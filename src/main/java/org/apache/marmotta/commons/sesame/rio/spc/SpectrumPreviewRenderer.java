@@ -0,0 +1,248 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Rendering of spectrum thumbnails to PNG files </br>
+ *
+ * Every subfile of a spectrum is decimated to the minimum and the maximum intensity </br>
+ * of each pixel column, so a thumbnail costs one pass over the points plus a constant </br>
+ * amount of drawing, whatever the size of the spectrum. </br>
+ * Decimation runs on the calling thread, drawing and encoding run on a single background thread </br>
+ * fed by a bounded queue. When the queue is full, the preview is dropped and the import goes on, </br>
+ * the caller is told so and does not link it. A rendering that fails is queued again a few times. </br>
+ *
+ * Previews are named after a hash of the spectral data, an existing preview is never rendered again, </br>
+ * a missing one is rendered again the next time the spectrum is submitted. </br>
+ *
+ */
+public class SpectrumPreviewRenderer {
+
+	public static final int WIDTH = 320;
+	public static final int HEIGHT = 160;
+	private static final int MARGIN = 4;
+	private static final int QUEUE_SIZE = 32;
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static Logger log = LoggerFactory.getLogger(SpectrumPreviewRenderer.class);
+
+	private static final boolean PNG_SUPPORTED = ImageIO.getImageWritersByFormatName("png").hasNext();
+
+	/**
+	 * rejects tasks when the queue is full, see {@link #submit(RamanSpectrum, String)}
+	 */
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+			new ThreadFactoryBuilder().setNameFormat("spc-preview-%d").setDaemon(true).build());
+
+	private final File directory;
+
+	/**
+	 * @param directory the directory where previews are cached </br>
+	 */
+	public SpectrumPreviewRenderer(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Hashing the wavelength axis and the intensities of a spectrum </br>
+	 *
+	 * @param spectrum a decoded spectrum </br>
+	 * @return a hexadecimal SHA-1 of the spectral data </br>
+	 */
+	public static String contentHash(RamanSpectrum spectrum) {
+		Hasher hasher = Hashing.sha1().newHasher();
+		for (double x : spectrum.getWavelength()) {
+			hasher.putDouble(x);
+		}
+		for (int i = 0; i < spectrum.getSubfileCount(); i++) {
+			for (double y : spectrum.getSubfile(i)) {
+				hasher.putDouble(y);
+			}
+		}
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Queuing the rendering of the preview of a spectrum, unless it is already cached </br>
+	 *
+	 * @param spectrum a decoded spectrum </br>
+	 * @param hash the content hash of the spectrum, see {@link #contentHash(RamanSpectrum)} </br>
+	 * @return the file the preview is written to, null if it is not cached and cannot be queued: </br>
+	 * the queue is full or the directory cannot hold PNG files </br>
+	 */
+	public File submit(RamanSpectrum spectrum, String hash) {
+
+		File target = new File(directory, hash + ".png");
+		if (target.exists()) {
+			return target;
+		}
+
+		//fail here what would fail in background for every preview
+		if (!PNG_SUPPORTED || !(directory.isDirectory() || directory.mkdirs()) || !directory.canWrite()) {
+			log.error("cannot write previews to {}", directory);
+			return null;
+		}
+		//do not decimate a spectrum that cannot be queued
+		if (executor.getQueue().remainingCapacity() == 0) {
+			log.warn("preview queue is full, {} is not rendered", target);
+			return null;
+		}
+
+		try {
+			executor.execute(new RenderTask(decimate(spectrum), target, 1));
+		} catch (RejectedExecutionException e) {
+			log.warn("preview queue is full, {} is not rendered", target);
+			return null;
+		}
+		return target;
+	}
+
+	/**
+	 * Reducing every subfile to the minimum and the maximum intensity of each pixel column </br>
+	 *
+	 * @return for every subfile, WIDTH minima followed by WIDTH maxima, NaN for empty columns </br>
+	 */
+	private static double[][] decimate(RamanSpectrum spectrum) {
+
+		double[] x = spectrum.getWavelength();
+		double from = Double.POSITIVE_INFINITY;
+		double to = Double.NEGATIVE_INFINITY;
+		for (double v : x) {
+			from = Math.min(from, v);
+			to = Math.max(to, v);
+		}
+		double scale = to > from ? (WIDTH - 1) / (to - from) : 0;
+
+		double[][] columns = new double[spectrum.getSubfileCount()][];
+		for (int i = 0; i < columns.length; i++) {
+			double[] y = spectrum.getSubfile(i);
+			double[] column = new double[2 * WIDTH];
+			Arrays.fill(column, Double.NaN);
+			for (int j = 0; j < y.length; j++) {
+				if (Double.isNaN(y[j])) {
+					continue;
+				}
+				int c = (int) Math.round((x[j] - from) * scale);
+				if (Double.isNaN(column[c]) || y[j] < column[c]) {
+					column[c] = y[j];
+				}
+				if (Double.isNaN(column[WIDTH + c]) || y[j] > column[WIDTH + c]) {
+					column[WIDTH + c] = y[j];
+				}
+			}
+			columns[i] = column;
+		}
+		return columns;
+	}
+
+	private void render(double[][] columns, File target) throws IOException {
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double[] column : columns) {
+			for (int c = 0; c < WIDTH; c++) {
+				if (!Double.isNaN(column[c])) {
+					min = Math.min(min, column[c]);
+					max = Math.max(max, column[WIDTH + c]);
+				}
+			}
+		}
+		double scale = max > min ? (HEIGHT - 1 - 2 * MARGIN) / (max - min) : 0;
+
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, WIDTH, HEIGHT);
+			g.setColor(new Color(0x1F, 0x4E, 0x9A));
+			g.setStroke(new BasicStroke(1f));
+
+			for (double[] column : columns) {
+				int lastY = -1;
+				for (int c = 0; c < WIDTH; c++) {
+					if (Double.isNaN(column[c])) {
+						continue;
+					}
+					int low = HEIGHT - 1 - MARGIN - (int) Math.round((column[c] - min) * scale);
+					int high = HEIGHT - 1 - MARGIN - (int) Math.round((column[WIDTH + c] - min) * scale);
+					g.drawLine(c, low, c, high);
+					if (lastY >= 0) {
+						g.drawLine(c - 1, lastY, c, (low + high) / 2);
+					}
+					lastY = (low + high) / 2;
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+
+		directory.mkdirs();
+		File tmp = new File(directory, target.getName() + ".tmp");
+		if (!ImageIO.write(image, "png", tmp)) {
+			throw new IOException("no PNG writer available");
+		}
+		if (!tmp.renameTo(target) && !target.exists()) {
+			throw new IOException("cannot move " + tmp + " to " + target);
+		}
+		tmp.delete();
+	}
+
+
+	/**
+	 * Rendering of one preview, queued again when it fails
+	 */
+	private class RenderTask implements Runnable {
+
+		private final double[][] columns;
+		private final File target;
+		private final int attempt;
+
+		private RenderTask(double[][] columns, File target, int attempt) {
+			this.columns = columns;
+			this.target = target;
+			this.attempt = attempt;
+		}
+
+		@Override
+		public void run() {
+			try {
+				render(columns, target);
+			} catch (IOException | RuntimeException e) {
+				if (attempt < MAX_ATTEMPTS) {
+					log.warn("cannot render preview {}, attempt {}: {}", target, attempt, e.getMessage());
+					try {
+						executor.execute(new RenderTask(columns, target, attempt + 1));
+						return;
+					} catch (RejectedExecutionException full) {
+						//give up below
+					}
+				}
+				log.error("cannot render preview {}: {}", target, e.getMessage());
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,266 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.message.ArrowBlock;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests of {@link ArrowSpectrumWriter}, files are read back with {@link ArrowFileReader} </br>
+ *
+ */
+public class ArrowSpectrumWriterTest {
+
+	private static final long NO_LIMIT = Long.MAX_VALUE;
+
+	private File directory;
+
+	@Before
+	public void setUp() {
+		directory = Files.createTempDir();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	/**
+	 * @param subfiles the number of subfiles, subfile i has intensity offset + i * 100 + j at point j </br>
+	 */
+	private static RamanSpectrum spectrum(int points, int subfiles, double offset) {
+		double[] x = new double[points];
+		double[] y = new double[points * subfiles];
+		for (int j = 0; j < points; j++) {
+			x[j] = 400 + j;
+			for (int i = 0; i < subfiles; i++) {
+				//column-major, as read from R
+				y[i + j * subfiles] = offset + i * 100 + j;
+			}
+		}
+		return new RamanSpectrum(x, y);
+	}
+
+	private static Map<String, String> metadata() {
+		Map<String, String> metadata = new HashMap<String, String>();
+		metadata.put("volunteerID", "V12");
+		metadata.put("dayOrder", "J1");
+		metadata.put("skinSpecification", "T");
+		return metadata;
+	}
+
+	/**
+	 * A row read back: uri, filename, volunteerID, measurementNumber, subfile, wavelength, intensity
+	 */
+	private static List<Object[]> read(File file, List<String> fieldNames) throws IOException {
+
+		List<Object[]> rows = new ArrayList<Object[]>();
+		RootAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+		FileInputStream in = new FileInputStream(file);
+		try {
+			ArrowFileReader reader = new ArrowFileReader(in.getChannel(), allocator);
+			try {
+				VectorSchemaRoot root = reader.getVectorSchemaRoot();
+				for (Field field : root.getSchema().getFields()) {
+					fieldNames.add(field.getName());
+				}
+				for (ArrowBlock block : reader.getRecordBlocks()) {
+					reader.loadRecordBatch(block);
+					for (int r = 0; r < root.getRowCount(); r++) {
+						VarCharVector measurement = (VarCharVector) root.getVector("measurementNumber");
+						rows.add(new Object[] {
+								((VarCharVector) root.getVector("uri")).getObject(r).toString(),
+								((VarCharVector) root.getVector("filename")).getObject(r).toString(),
+								((VarCharVector) root.getVector("volunteerID")).getObject(r).toString(),
+								measurement.isNull(r) ? null : measurement.getObject(r).toString(),
+								((IntVector) root.getVector("subfile")).get(r),
+								((ListVector) root.getVector("wavelength")).getObject(r),
+								((ListVector) root.getVector("intensity")).getObject(r) });
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			in.close();
+			allocator.close();
+		}
+		return rows;
+	}
+
+	private static List<Float> floats(double... values) {
+		List<Float> result = new ArrayList<Float>();
+		for (double value : values) {
+			result.add((float) value);
+		}
+		return result;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+
+		ArrowSpectrumWriter writer = new ArrowSpectrumWriter(directory, NO_LIMIT, NO_LIMIT);
+		ArrowSpectrumWriter.Location first = writer.append("urn:a", "a.spc", metadata(), spectrum(3, 2, 0), false);
+		ArrowSpectrumWriter.Location second = writer.append("urn:b", "b.spc", metadata(), spectrum(3, 1, 1000), false);
+		writer.close();
+
+		assertEquals(first.getFile(), second.getFile());
+		assertEquals(0, first.getRow());
+		assertEquals(2, second.getRow());
+
+		List<String> fields = new ArrayList<String>();
+		List<Object[]> rows = read(new File(directory, first.getFile()), fields);
+		assertEquals(Arrays.asList("uri", "filename", "volunteerID", "dayOrder", "skinSpecification", "measurementNumber",
+				"subfile", "wavelength", "intensity"), fields);
+		assertEquals(3, rows.size());
+
+		assertEquals("urn:a", rows.get(0)[0]);
+		assertEquals("a.spc", rows.get(0)[1]);
+		assertEquals("V12", rows.get(0)[2]);
+		assertEquals(null, rows.get(0)[3]);
+		assertEquals(0, rows.get(0)[4]);
+		assertEquals(floats(400, 401, 402), rows.get(0)[5]);
+		assertEquals(floats(0, 1, 2), rows.get(0)[6]);
+
+		assertEquals("urn:a", rows.get(1)[0]);
+		assertEquals(1, rows.get(1)[4]);
+		assertEquals(floats(100, 101, 102), rows.get(1)[6]);
+
+		//the location of a spectrum is the row of its first subfile
+		assertEquals("urn:b", rows.get(second.getRow())[0]);
+		assertEquals(floats(1000, 1001, 1002), rows.get(second.getRow())[6]);
+	}
+
+	@Test
+	public void testSchemaTypes() throws IOException {
+
+		ArrowSpectrumWriter writer = new ArrowSpectrumWriter(directory, NO_LIMIT, NO_LIMIT);
+		ArrowSpectrumWriter.Location location = writer.append("urn:a", "a.spc", metadata(), spectrum(3, 1, 0), true);
+
+		RootAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+		FileInputStream in = new FileInputStream(new File(directory, location.getFile()));
+		try {
+			ArrowFileReader reader = new ArrowFileReader(in.getChannel(), allocator);
+			try {
+				for (Field field : reader.getVectorSchemaRoot().getSchema().getFields()) {
+					if (field.getName().equals("subfile")) {
+						assertEquals(new ArrowType.Int(32, true), field.getType());
+					} else if (field.getName().equals("wavelength") || field.getName().equals("intensity")) {
+						assertTrue(field.getType() instanceof ArrowType.List);
+						ArrowType item = field.getChildren().get(0).getType();
+						assertEquals(new ArrowType.FloatingPoint(org.apache.arrow.vector.types.FloatingPointPrecision.SINGLE), item);
+					} else {
+						assertEquals(new ArrowType.Utf8(), field.getType());
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			in.close();
+			allocator.close();
+		}
+	}
+
+	@Test
+	public void testManyBatches() throws IOException {
+
+		ArrowSpectrumWriter writer = new ArrowSpectrumWriter(directory, NO_LIMIT, NO_LIMIT);
+		ArrowSpectrumWriter.Location last = null;
+		for (int i = 0; i < ArrowSpectrumWriter.BATCH_ROWS * 2 + 5; i++) {
+			last = writer.append("urn:" + i, i + ".spc", metadata(), spectrum(4, 1, i), false);
+		}
+		writer.close();
+
+		List<Object[]> rows = read(new File(directory, last.getFile()), new ArrayList<String>());
+		assertEquals(ArrowSpectrumWriter.BATCH_ROWS * 2 + 5, rows.size());
+		assertEquals("urn:" + last.getRow(), rows.get(last.getRow())[0]);
+	}
+
+	@Test
+	public void testRotationBySize() throws IOException {
+
+		//every file is full after one spectrum
+		ArrowSpectrumWriter writer = new ArrowSpectrumWriter(directory, 1, NO_LIMIT);
+		ArrowSpectrumWriter.Location first = writer.append("urn:a", "a.spc", metadata(), spectrum(3, 2, 0), false);
+		ArrowSpectrumWriter.Location second = writer.append("urn:b", "b.spc", metadata(), spectrum(3, 1, 0), false);
+		writer.close();
+
+		assertNotEquals(first.getFile(), second.getFile());
+		assertEquals(0, second.getRow());
+		//the rows of a spectrum never span two files
+		assertEquals(2, read(new File(directory, first.getFile()), new ArrayList<String>()).size());
+		assertEquals(1, read(new File(directory, second.getFile()), new ArrayList<String>()).size());
+	}
+
+	@Test
+	public void testPartUntilClosed() throws IOException {
+
+		ArrowSpectrumWriter writer = new ArrowSpectrumWriter(directory, NO_LIMIT, NO_LIMIT);
+		ArrowSpectrumWriter.Location location = writer.append("urn:a", "a.spc", metadata(), spectrum(3, 1, 0), false);
+
+		File file = new File(directory, location.getFile());
+		File part = writer.getCurrentFile();
+		assertEquals(file.getName() + ".part", part.getName());
+		assertTrue(part.exists());
+		assertFalse(file.exists());
+
+		writer.close();
+		assertFalse(part.exists());
+		assertTrue(file.exists());
+	}
+
+	@Test
+	public void testRotationByTime() throws IOException, InterruptedException {
+
+		ArrowSpectrumWriter writer = new ArrowSpectrumWriter(directory, NO_LIMIT, 50);
+		ArrowSpectrumWriter.Location location = writer.append("urn:a", "a.spc", metadata(), spectrum(3, 1, 0), false);
+
+		File file = new File(directory, location.getFile());
+		for (int i = 0; i < 100 && !file.exists(); i++) {
+			Thread.sleep(20);
+		}
+		assertTrue(file.exists());
+		assertEquals(1, read(file, new ArrayList<String>()).size());
+		writer.close();
+	}
+
+	@Test
+	public void testDurable() throws IOException {
+
+		ArrowSpectrumWriter writer = new ArrowSpectrumWriter(directory, NO_LIMIT, NO_LIMIT);
+		ArrowSpectrumWriter.Location location = writer.append("urn:a", "a.spc", metadata(), spectrum(3, 2, 0), true);
+
+		//readable before the writer is closed
+		assertEquals(2, read(new File(directory, location.getFile()), new ArrayList<String>()).size());
+		ArrowSpectrumWriter.Location next = writer.append("urn:b", "b.spc", metadata(), spectrum(3, 1, 0), true);
+		assertNotEquals(location.getFile(), next.getFile());
+		writer.close();
+	}
+
+}
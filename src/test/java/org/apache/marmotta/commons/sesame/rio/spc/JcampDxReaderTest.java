@@ -0,0 +1,229 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.openrdf.rio.RDFParseException;
+
+/**
+ * Tests of {@link JcampDxReader} </br>
+ *
+ */
+public class JcampDxReaderTest {
+
+	private static final String HEADER =
+			"##TITLE=test\n" +
+			"##JCAMP-DX=4.24\n" +
+			"##DATA TYPE=RAMAN SPECTRUM\n" +
+			"##XUNITS=1/CM\n" +
+			"##YUNITS=ARBITRARY UNITS\n";
+
+	/**
+	 * @param points the value of NPOINTS, also the number of abscissae from 100 by steps of 1 </br>
+	 * @param lines the lines of the (X++(Y..Y)) table </br>
+	 */
+	private static JcampDxReader xyData(int points, String... lines) throws IOException, RDFParseException {
+		StringBuilder text = new StringBuilder(HEADER);
+		text.append("##FIRSTX=100\n");
+		text.append("##LASTX=").append(100 + points - 1).append('\n');
+		text.append("##NPOINTS=").append(points).append('\n');
+		text.append("##XYDATA=(X++(Y..Y))\n");
+		for (String line : lines) {
+			text.append(line).append('\n');
+		}
+		text.append("##END=\n");
+		JcampDxReader reader = new JcampDxReader(new StringReader(text.toString()));
+		reader.read();
+		return reader;
+	}
+
+	private static double[] values(double... values) {
+		return values;
+	}
+
+	@Test
+	public void testAffn() throws IOException, RDFParseException {
+
+		JcampDxReader reader = xyData(8, "100 10 20 30 40", "104 50 60 70 80 $$ comment");
+		assertArrayEquals(values(10, 20, 30, 40, 50, 60, 70, 80), reader.getY(), 0);
+		assertArrayEquals(values(100, 101, 102, 103, 104, 105, 106, 107), reader.getX(), 1e-9);
+		assertEquals("test", reader.getHeader().get("TITLE"));
+		assertEquals("RAMAN SPECTRUM", reader.getHeader().get("DATATYPE"));
+		assertFalse(reader.isPeakTable());
+	}
+
+	@Test
+	public void testHeaderBeforeData() throws IOException, RDFParseException {
+
+		JcampDxReader reader = new JcampDxReader(new StringReader(HEADER +
+				"##FIRSTX=100\n##LASTX=103\n##NPOINTS=4\n##XYDATA=(X++(Y..Y))\n100 10 20 30 40\n##ORIGIN=lab\n##END=\n"));
+		reader.readHeader();
+		assertEquals(4, reader.getDeclaredPoints());
+		assertNull(reader.getY());
+
+		reader.readData();
+		assertArrayEquals(values(10, 20, 30, 40), reader.getY(), 0);
+		assertEquals("lab", reader.getHeader().get("ORIGIN"));
+		assertFalse(reader.getHeader().containsKey("XYDATA"));
+	}
+
+	@Test
+	public void testUndeclaredPoints() throws IOException, RDFParseException {
+
+		JcampDxReader reader = new JcampDxReader(new StringReader(HEADER + "##XYPOINTS=(XY..XY)\n100,10\n##END=\n"));
+		reader.readHeader();
+		assertEquals(-1, reader.getDeclaredPoints());
+	}
+
+	@Test
+	public void testYFactor() throws IOException, RDFParseException {
+
+		JcampDxReader reader = new JcampDxReader(new StringReader(HEADER +
+				"##FIRSTX=100\n##LASTX=101\n##YFACTOR=0.5\n##XYDATA=(X++(Y..Y))\n100 10 20\n##END=\n"));
+		reader.read();
+		assertArrayEquals(values(5, 10), reader.getY(), 0);
+	}
+
+	@Test
+	public void testPac() throws IOException, RDFParseException {
+
+		JcampDxReader reader = xyData(6, "100+10+20-30+40", "104 10-5");
+		assertArrayEquals(values(10, 20, -30, 40, 10, -5), reader.getY(), 0);
+	}
+
+	@Test
+	public void testSqz() throws IOException, RDFParseException {
+
+		JcampDxReader reader = xyData(5, "100A0B0c0D0@");
+		assertArrayEquals(values(10, 20, -30, 40, 0), reader.getY(), 0);
+	}
+
+	@Test
+	public void testDifWithYCheck() throws IOException, RDFParseException {
+
+		//the second line starts with the last value of the first one, which is not repeated
+		JcampDxReader reader = xyData(8, "100A0J0J0J0", "104D0J0J0J0J0");
+		assertArrayEquals(values(10, 20, 30, 40, 50, 60, 70, 80), reader.getY(), 0);
+	}
+
+	@Test
+	public void testDifSigns() throws IOException, RDFParseException {
+
+		JcampDxReader reader = xyData(4, "100E0j0k0%");
+		assertArrayEquals(values(50, 40, 20, 20), reader.getY(), 0);
+	}
+
+	@Test
+	public void testDup() throws IOException, RDFParseException {
+
+		//a DUP after a SQZ repeats the value, after a DIF it repeats the difference
+		JcampDxReader reader = xyData(6, "100A0T", "102C0J0U");
+		assertArrayEquals(values(10, 10, 30, 40, 50, 60), reader.getY(), 0);
+	}
+
+	@Test
+	public void testDupOfDifAcrossLines() throws IOException, RDFParseException {
+
+		JcampDxReader reader = xyData(8, "100A0J0U", "104D0J0V");
+		assertArrayEquals(values(10, 20, 30, 40, 50, 60, 70, 80), reader.getY(), 0);
+	}
+
+	@Test
+	public void testLongDup() throws IOException, RDFParseException {
+
+		JcampDxReader reader = xyData(11, "100A0S1");
+		assertEquals(11, reader.getY().length);
+		for (double y : reader.getY()) {
+			assertEquals(10, y, 0);
+		}
+	}
+
+	@Test
+	public void testExponent() throws IOException, RDFParseException {
+
+		//E or e followed by a sign is an exponent, followed by a digit it is a negative SQZ
+		JcampDxReader reader = xyData(4, "100 1E+01 2.5e-1 1e0");
+		assertArrayEquals(values(10, 0.25, 1, -50), reader.getY(), 0);
+	}
+
+	@Test
+	public void testMissingValue() throws IOException, RDFParseException {
+
+		JcampDxReader reader = xyData(3, "100 10?30");
+		assertEquals(10, reader.getY()[0], 0);
+		assertTrue(Double.isNaN(reader.getY()[1]));
+		assertEquals(30, reader.getY()[2], 0);
+	}
+
+	@Test
+	public void testXyPoints() throws IOException, RDFParseException {
+
+		JcampDxReader reader = new JcampDxReader(new StringReader(HEADER +
+				"##XYPOINTS=(XY..XY)\n100,10; 101.5,20\n102 30\n##END=\n"));
+		reader.read();
+		assertArrayEquals(values(100, 101.5, 102), reader.getX(), 0);
+		assertArrayEquals(values(10, 20, 30), reader.getY(), 0);
+		assertFalse(reader.isPeakTable());
+	}
+
+	@Test
+	public void testPeakTable() throws IOException, RDFParseException {
+
+		JcampDxReader reader = new JcampDxReader(new StringReader(HEADER +
+				"##PEAKTABLE=(XY..XY)\n1001.4,250; 1449.0,80\n##END=\n"));
+		reader.read();
+		assertTrue(reader.isPeakTable());
+		assertArrayEquals(values(1001.4, 1449.0), reader.getX(), 0);
+		assertArrayEquals(values(250, 80), reader.getY(), 0);
+	}
+
+	@Test(expected = RDFParseException.class)
+	public void testYCheckFailure() throws IOException, RDFParseException {
+
+		xyData(8, "100A0J0J0J0", "104E0J0J0J0J0");
+	}
+
+	@Test(expected = RDFParseException.class)
+	public void testDupWithoutValue() throws IOException, RDFParseException {
+
+		xyData(2, "100 T");
+	}
+
+	@Test(expected = RDFParseException.class)
+	public void testDifWithoutValue() throws IOException, RDFParseException {
+
+		xyData(2, "100 J0");
+	}
+
+	@Test(expected = RDFParseException.class)
+	public void testNPointsMismatch() throws IOException, RDFParseException {
+
+		xyData(5, "100 10 20 30 40");
+	}
+
+	@Test(expected = RDFParseException.class)
+	public void testMissingFirstX() throws IOException, RDFParseException {
+
+		new JcampDxReader(new StringReader(HEADER + "##XYDATA=(X++(Y..Y))\n100 10 20\n##END=\n")).read();
+	}
+
+	@Test(expected = RDFParseException.class)
+	public void testNoDataTable() throws IOException, RDFParseException {
+
+		new JcampDxReader(new StringReader(HEADER + "##END=\n")).read();
+	}
+
+	@Test(expected = RDFParseException.class)
+	public void testCompoundFile() throws IOException, RDFParseException {
+
+		new JcampDxReader(new StringReader(HEADER + "##NTUPLES=RAMAN SPECTRUM\n##END=\n")).read();
+	}
+
+}
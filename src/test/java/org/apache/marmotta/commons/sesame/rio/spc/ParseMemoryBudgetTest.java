@@ -0,0 +1,70 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link ParseMemoryBudget} </br>
+ *
+ */
+public class ParseMemoryBudgetTest {
+
+	private static final long KIB = 1024;
+
+	@Test
+	public void testAcquireAndClose() throws InterruptedException {
+
+		ParseMemoryBudget budget = new ParseMemoryBudget(100 * KIB);
+		ParseMemoryBudget.Lease lease = budget.acquire(40 * KIB);
+		assertEquals(60 * KIB, budget.available());
+
+		lease.close();
+		lease.close();
+		assertEquals(100 * KIB, budget.available());
+	}
+
+	@Test
+	public void testCappedToBudget() throws InterruptedException {
+
+		ParseMemoryBudget budget = new ParseMemoryBudget(100 * KIB);
+		ParseMemoryBudget.Lease lease = budget.acquire(Long.MAX_VALUE / 2);
+		assertEquals(0, budget.available());
+		lease.close();
+		assertEquals(100 * KIB, budget.available());
+	}
+
+	@Test
+	public void testResize() throws InterruptedException {
+
+		ParseMemoryBudget budget = new ParseMemoryBudget(100 * KIB);
+		ParseMemoryBudget.Lease lease = budget.acquire(100 * KIB);
+
+		//an estimate above the actual need gives the difference back
+		assertTrue(lease.resize(10 * KIB));
+		assertEquals(90 * KIB, budget.available());
+
+		assertTrue(lease.resize(30 * KIB));
+		assertEquals(70 * KIB, budget.available());
+
+		//growing never waits for other leases
+		ParseMemoryBudget.Lease other = budget.acquire(60 * KIB);
+		assertFalse(lease.resize(50 * KIB));
+		assertEquals(10 * KIB, budget.available());
+
+		other.close();
+		lease.close();
+		assertEquals(100 * KIB, budget.available());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testResizeClosed() throws InterruptedException {
+
+		ParseMemoryBudget.Lease lease = new ParseMemoryBudget(100 * KIB).acquire(10 * KIB);
+		lease.close();
+		lease.resize(20 * KIB);
+	}
+
+}
@@ -0,0 +1,133 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Tests of {@link ParseProvenance} </br>
+ *
+ */
+public class ParseProvenanceTest {
+
+	private static final String SHA1_EMPTY = "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+
+	@Test
+	public void testStages() throws InterruptedException {
+
+		ParseProvenance provenance = new ParseProvenance();
+		assertEquals(0, provenance.getStageCount());
+		assertEquals(0, provenance.getTotalDuration());
+
+		provenance.stage("read");
+		Thread.sleep(5);
+		provenance.stage("decode");
+
+		assertEquals(2, provenance.getStageCount());
+		assertEquals("read", provenance.getStage(0));
+		assertEquals("decode", provenance.getStage(1));
+		assertTrue(provenance.getDuration(0) >= 0);
+		assertTrue(provenance.getDuration(1) >= 5000000);
+		assertEquals(provenance.getDuration(0) + provenance.getDuration(1), provenance.getTotalDuration());
+		assertEquals(provenance.getStartMillis() + provenance.getTotalDuration() / 1000000, provenance.getEndMillis());
+	}
+
+	@Test
+	public void testTooManyStages() {
+
+		ParseProvenance provenance = new ParseProvenance();
+		for (int i = 0; i < 8; i++) {
+			provenance.stage("stage" + i);
+		}
+		try {
+			provenance.stage("overflow");
+			fail("a ninth stage was accepted");
+		} catch (IllegalStateException e) {
+			//the buffered stages are kept
+		}
+		assertEquals(8, provenance.getStageCount());
+		assertEquals("stage7", provenance.getStage(7));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testUnknownStage() {
+
+		ParseProvenance provenance = new ParseProvenance();
+		provenance.stage("read");
+		provenance.getDuration(1);
+	}
+
+	@Test
+	public void testWrapInputStream() throws IOException {
+
+		ParseProvenance provenance = new ParseProvenance();
+		assertEquals(SHA1_EMPTY, provenance.getInputHash());
+
+		InputStream in = provenance.wrap(new ByteArrayInputStream("abc".getBytes("US-ASCII")));
+		assertEquals('a', in.read());
+		assertEquals(1, provenance.getInputSize());
+		//the hash so far does not end the digest
+		assertEquals("86f7e437faa5a7fce15d1ddcb9eaeaea377667b8", provenance.getInputHash());
+
+		byte[] buffer = new byte[8];
+		assertEquals(2, in.read(buffer, 1, 7));
+		assertEquals(-1, in.read(buffer, 0, 8));
+		assertEquals(-1, in.read());
+
+		assertEquals(3, provenance.getInputSize());
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", provenance.getInputHash());
+	}
+
+	@Test
+	public void testWrapReader() throws IOException {
+
+		ParseProvenance provenance = new ParseProvenance();
+		Reader reader = provenance.wrap(new StringReader("a\u00e9"));
+		assertEquals('a', reader.read());
+		char[] buffer = new char[4];
+		assertEquals(1, reader.read(buffer, 2, 2));
+		assertEquals('\u00e9', buffer[2]);
+		assertEquals(-1, reader.read(buffer, 0, 4));
+
+		//characters are counted, the hash is of the UTF-16BE code units
+		assertEquals(2, provenance.getInputSize());
+		assertEquals("7ec34fa6e8519d522c922a76313d0503dd098808", provenance.getInputHash());
+	}
+
+	@Test
+	public void testCount() throws RDFHandlerException {
+
+		ParseProvenance provenance = new ParseProvenance();
+		StatementCollector collector = new StatementCollector();
+		RDFHandler handler = provenance.count(collector);
+
+		URI subject = new URIImpl("http://localhost:8080/resource/sample.spc");
+		URI predicate = new URIImpl("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+		handler.startRDF();
+		handler.handleNamespace("spc", "http://localhost:8080/spc#");
+		for (int i = 0; i < 3; i++) {
+			handler.handleStatement(new StatementImpl(subject, predicate, new URIImpl("http://localhost:8080/spc#T" + i)));
+		}
+		handler.handleComment("not a statement");
+		handler.endRDF();
+
+		assertEquals(3, provenance.getStatementCount());
+		assertEquals(3, collector.getStatements().size());
+		assertEquals("http://localhost:8080/spc#", collector.getNamespaces().get("spc"));
+	}
+
+}
@@ -0,0 +1,217 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link PeakDetector} on synthetic spectra </br>
+ *
+ */
+public class PeakDetectorTest {
+
+	private static final int POINTS = 1001;
+
+	/**
+	 * wavelength axis from 0 to 1000 in steps of 1
+	 */
+	private static double[] axis() {
+		double[] x = new double[POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			x[i] = i;
+		}
+		return x;
+	}
+
+	private static double[] gaussian(double[] x, double amplitude, double center, double sigma) {
+		double[] y = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			double d = (x[i] - center) / sigma;
+			y[i] = amplitude * Math.exp(-0.5 * d * d);
+		}
+		return y;
+	}
+
+	private static double[] lorentzian(double[] x, double amplitude, double center, double gamma) {
+		double[] y = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			double d = (x[i] - center) / gamma;
+			y[i] = amplitude / (1 + d * d);
+		}
+		return y;
+	}
+
+	@Test
+	public void testGaussian() {
+
+		double[] x = axis();
+		double sigma = 10;
+		List<PeakDetector.Peak> peaks = new PeakDetector(0.05, 0.02, 1).detect(x, gaussian(x, 100, 500.3, sigma));
+
+		assertEquals(1, peaks.size());
+		PeakDetector.Peak peak = peaks.get(0);
+		assertEquals(500.3, peak.getPosition(), 0.05);
+		assertEquals(100, peak.getHeight(), 0.1);
+		assertEquals(2 * Math.sqrt(2 * Math.log(2)) * sigma, peak.getFwhm(), 0.01 * 2.3548 * sigma);
+		assertEquals(100 * sigma * Math.sqrt(2 * Math.PI), peak.getArea(), 0.005 * 100 * sigma * Math.sqrt(2 * Math.PI));
+	}
+
+	@Test
+	public void testLorentzian() {
+
+		double[] x = axis();
+		double gamma = 8;
+		List<PeakDetector.Peak> peaks = new PeakDetector(0.05, 0.02, 1).detect(x, lorentzian(x, 50, 500, gamma));
+
+		assertEquals(1, peaks.size());
+		PeakDetector.Peak peak = peaks.get(0);
+		assertEquals(500, peak.getPosition(), 0.05);
+		assertEquals(50, peak.getHeight(), 0.1);
+		//the tails reach the ends of the axis, the half height is taken above them
+		double base = 50 / (1 + (500 / gamma) * (500 / gamma));
+		double fwhm = 2 * gamma * Math.sqrt((50 - base) / (50 + base));
+		assertEquals(fwhm, peak.getFwhm(), 0.01 * fwhm);
+		double area = 50 * gamma * 2 * Math.atan(500 / gamma) - base * 1000;
+		assertEquals(area, peak.getArea(), 0.01 * area);
+	}
+
+	@Test
+	public void testSmoothedGaussian() {
+
+		double[] x = axis();
+		double[] y = gaussian(x, 100, 300, 12);
+		//alternating noise is removed by the moving average
+		for (int i = 0; i < y.length; i++) {
+			y[i] += (i % 2 == 0 ? 0.5 : -0.5);
+		}
+		List<PeakDetector.Peak> peaks = new PeakDetector(0.05, 0.02, 5).detect(x, y);
+
+		assertEquals(1, peaks.size());
+		assertEquals(300, peaks.get(0).getPosition(), 0.5);
+	}
+
+	@Test
+	public void testNarrowBandAtDefaultWindow() {
+
+		//a band a few points wide, that a moving average of 5 points lowers and widens
+		double[] x = axis();
+		double sigma = 2.5;
+		int window = SpcParserSettings.PEAK_SMOOTHING_WINDOW.getDefaultValue();
+		List<PeakDetector.Peak> peaks = new PeakDetector(0.05, 0.02, window).detect(x, gaussian(x, 100, 400.2, sigma));
+
+		assertEquals(1, peaks.size());
+		PeakDetector.Peak peak = peaks.get(0);
+		assertEquals(400.2, peak.getPosition(), 0.1);
+		assertEquals(100, peak.getHeight(), 1);
+		assertEquals(2 * Math.sqrt(2 * Math.log(2)) * sigma, peak.getFwhm(), 0.02 * 2.3548 * sigma);
+		assertEquals(100 * sigma * Math.sqrt(2 * Math.PI), peak.getArea(), 0.01 * 100 * sigma * Math.sqrt(2 * Math.PI));
+	}
+
+	@Test
+	public void testNoisyNarrowBandAtDefaultWindow() {
+
+		double[] x = axis();
+		double sigma = 3;
+		double[] y = gaussian(x, 100, 600, sigma);
+		for (int i = 0; i < y.length; i++) {
+			y[i] += (i % 2 == 0 ? 0.5 : -0.5);
+		}
+		int window = SpcParserSettings.PEAK_SMOOTHING_WINDOW.getDefaultValue();
+		List<PeakDetector.Peak> peaks = new PeakDetector(0.05, 0.02, window).detect(x, y);
+
+		assertEquals(1, peaks.size());
+		PeakDetector.Peak peak = peaks.get(0);
+		assertEquals(600, peak.getPosition(), 0.2);
+		assertEquals(100, peak.getHeight(), 1.5);
+		assertEquals(2 * Math.sqrt(2 * Math.log(2)) * sigma, peak.getFwhm(), 0.05 * 2.3548 * sigma);
+	}
+
+	@Test
+	public void testThresholds() {
+
+		double[] x = axis();
+		double[] y = gaussian(x, 100, 300, 10);
+		double[] small = gaussian(x, 1, 700, 10);
+		for (int i = 0; i < y.length; i++) {
+			y[i] += small[i];
+		}
+
+		assertEquals(1, new PeakDetector(0.05, 0.02, 1).detect(x, y).size());
+		assertEquals(2, new PeakDetector(0, 0, 1).detect(x, y).size());
+	}
+
+	@Test
+	public void testPlateau() {
+
+		double[] x = { 0, 1, 2, 3, 4, 5, 6 };
+		List<PeakDetector.Peak> peaks = new PeakDetector(0, 0, 1).detect(x, new double[] { 0, 1, 2, 2, 2, 1, 0 });
+
+		assertEquals(1, peaks.size());
+		assertEquals(3, peaks.get(0).getPosition(), 1e-9);
+		assertEquals(2, peaks.get(0).getHeight(), 1e-9);
+	}
+
+	@Test
+	public void testRisingPlateau() {
+
+		//a shoulder followed by a higher value is not a peak
+		double[] x = { 0, 1, 2, 3, 4, 5 };
+		List<PeakDetector.Peak> peaks = new PeakDetector(0, 0, 1).detect(x, new double[] { 0, 1, 1, 2, 1, 0 });
+
+		assertEquals(1, peaks.size());
+		assertEquals(3, peaks.get(0).getPosition(), 1e-9);
+	}
+
+	@Test
+	public void testFlat() {
+
+		double[] x = axis();
+		double[] y = new double[POINTS];
+		Arrays.fill(y, 5);
+
+		assertTrue(new PeakDetector(0, 0, 1).detect(x, y).isEmpty());
+		assertTrue(new PeakDetector(0, 0, 5).detect(x, y).isEmpty());
+	}
+
+	@Test
+	public void testTooShort() {
+
+		PeakDetector detector = new PeakDetector(0, 0, 1);
+		assertTrue(detector.detect(new double[0], new double[0]).isEmpty());
+		assertTrue(detector.detect(new double[] { 0 }, new double[] { 1 }).isEmpty());
+		assertTrue(detector.detect(new double[] { 0, 1 }, new double[] { 1, 2 }).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLengthMismatch() {
+		new PeakDetector(0, 0, 1).detect(new double[] { 0, 1, 2 }, new double[] { 0, 1 });
+	}
+
+	@Test
+	public void testSubfiles() throws InterruptedException {
+
+		double[] x = axis();
+		double[][] rows = { gaussian(x, 100, 200, 10), gaussian(x, 80, 450, 10), gaussian(x, 60, 800, 10) };
+
+		//column-major, as read from R
+		double[] matrix = new double[rows.length * POINTS];
+		for (int i = 0; i < rows.length; i++) {
+			for (int j = 0; j < POINTS; j++) {
+				matrix[i + j * rows.length] = rows[i][j];
+			}
+		}
+		List<List<PeakDetector.Peak>> peaks = new PeakDetector(0.05, 0.02, 1).detectAll(new RamanSpectrum(x, matrix));
+
+		assertEquals(3, peaks.size());
+		assertEquals(1, peaks.get(0).size());
+		assertEquals(200, peaks.get(0).get(0).getPosition(), 0.05);
+		assertEquals(450, peaks.get(1).get(0).getPosition(), 0.05);
+		assertEquals(800, peaks.get(2).get(0).getPosition(), 0.05);
+		assertEquals(60, peaks.get(2).get(0).getHeight(), 0.1);
+	}
+
+}
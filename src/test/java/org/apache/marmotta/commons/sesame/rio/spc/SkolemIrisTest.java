@@ -0,0 +1,85 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link SkolemIris} </br>
+ *
+ */
+public class SkolemIrisTest {
+
+	private static final String ROOT = "http://localhost:8080/resource/sample.spc";
+
+	private static final String[] KEYS = { "fexp", "ftflgs", "fexp", "fnpts", "fexp" };
+
+	private static List<String> mintAll(SkolemIris iris) {
+		List<String> result = new ArrayList<String>();
+		for (String key : KEYS) {
+			result.add(iris.mint(ROOT, key));
+		}
+		return result;
+	}
+
+	@Test
+	public void testFnv1a64() {
+
+		//FNV-1a 64 of the UTF-16LE bytes of the string
+		assertEquals(0xcbf29ce484222325L, SkolemIris.fnv1a64(""));
+		assertEquals(0x089be207b544f1e4L, SkolemIris.fnv1a64("a"));
+		assertEquals(0x0a6a1207b6cd9facL, SkolemIris.fnv1a64("\u00e9"));
+	}
+
+	@Test
+	public void testDeterministicAcrossParses() {
+
+		SkolemIris iris = new SkolemIris();
+		List<String> first = mintAll(iris);
+		iris.reset();
+		List<String> second = mintAll(iris);
+
+		assertEquals(first, second);
+		assertEquals(first, mintAll(new SkolemIris()));
+	}
+
+	@Test
+	public void testRepeatedKeys() {
+
+		List<String> minted = mintAll(new SkolemIris());
+
+		assertEquals(KEYS.length, new HashSet<String>(minted).size());
+		for (String iri : minted) {
+			assertTrue(iri.startsWith(ROOT + "/genid/"));
+		}
+	}
+
+	@Test
+	public void testRoots() {
+
+		SkolemIris iris = new SkolemIris();
+		assertNotEquals(iris.mint(ROOT, "fexp"), iris.mint(ROOT + "2", "fexp"));
+	}
+
+	@Test
+	public void testReset() {
+
+		SkolemIris iris = new SkolemIris();
+		assertTrue(iris.isEmpty());
+		String first = iris.mint(ROOT, "fexp");
+		assertFalse(iris.isEmpty());
+		assertNotEquals(first, iris.mint(ROOT, "fexp"));
+
+		iris.reset();
+		assertTrue(iris.isEmpty());
+		assertEquals(first, iris.mint(ROOT, "fexp"));
+	}
+
+}
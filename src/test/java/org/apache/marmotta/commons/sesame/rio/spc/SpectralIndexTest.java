@@ -0,0 +1,108 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests of {@link SpectralIndex} </br>
+ *
+ */
+public class SpectralIndexTest {
+
+	private static final SpectrumBinning BINNING = new SpectrumBinning(0, 100, 16);
+
+	private File directory;
+
+	@Before
+	public void setUp() {
+		directory = Files.createTempDir();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	/**
+	 * a single peak whose position depends on i
+	 */
+	private static RamanSpectrum spectrum(int i) {
+		double[] x = new double[100];
+		double[] y = new double[100];
+		for (int j = 0; j < x.length; j++) {
+			x[j] = j;
+			double d = (j - 3 - 4.5 * i) / 3;
+			y[j] = Math.exp(-0.5 * d * d);
+		}
+		return new RamanSpectrum(x, y);
+	}
+
+	@Test
+	public void testSegments() throws IOException {
+
+		//4 records per segment, the records span several segments and the last one grows
+		SpectralIndex index = new SpectralIndex(directory, BINNING, 4);
+		for (int i = 0; i < 20; i++) {
+			index.add("urn:spectrum:" + i, spectrum(i));
+		}
+		//a re-import replaces its record
+		index.add("urn:spectrum:5", spectrum(5));
+		assertEquals(20, index.size());
+		assertNearest(index);
+		index.close();
+
+		index = new SpectralIndex(directory, BINNING, 4);
+		assertEquals(20, index.size());
+		assertNearest(index);
+		index.close();
+	}
+
+	private static void assertNearest(SpectralIndex index) {
+		for (int i = 0; i < 20; i++) {
+			List<SpectralIndex.Match> matches = index.nearest(spectrum(i), 1);
+			assertEquals(1, matches.size());
+			assertEquals("urn:spectrum:" + i, matches.get(0).getUri());
+			assertEquals(1, matches.get(0).getSimilarity(), 1e-4);
+		}
+		List<SpectralIndex.Match> neighbours = index.nearest("urn:spectrum:10", 2);
+		assertEquals(2, neighbours.size());
+		assertTrue(neighbours.get(0).getUri().equals("urn:spectrum:9") || neighbours.get(0).getUri().equals("urn:spectrum:11"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCorruptCount() throws IOException {
+
+		SpectralIndex index = new SpectralIndex(directory, BINNING);
+		index.add("urn:spectrum:0", spectrum(0));
+		index.close();
+
+		RandomAccessFile file = new RandomAccessFile(new File(directory, "fingerprints.bin"), "rw");
+		try {
+			file.seek(24);
+			file.writeLong(1L << 40);
+		} finally {
+			file.close();
+		}
+		new SpectralIndex(directory, BINNING);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testOtherGrid() throws IOException {
+
+		new SpectralIndex(directory, BINNING).close();
+		new SpectralIndex(directory, new SpectrumBinning(0, 200, 16));
+	}
+
+}
@@ -0,0 +1,196 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests of {@link SpectrumAggregates} </br>
+ *
+ */
+public class SpectrumAggregatesTest {
+
+	private static final SpectrumBinning BINNING = new SpectrumBinning(0, 10, 10);
+
+	private File directory;
+	private File file;
+
+	@Before
+	public void setUp() {
+		directory = Files.createTempDir();
+		file = new File(directory, "aggregates.bin");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	/**
+	 * one point per bin, the last bin is left empty
+	 */
+	private static RamanSpectrum spectrum(double... values) {
+		double[] x = new double[values.length];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = i + 0.5;
+		}
+		return new RamanSpectrum(x, values);
+	}
+
+	private static RamanSpectrum constant(double value) {
+		return spectrum(value, value, value, value, value, value, value, value, value);
+	}
+
+	@Test
+	public void testMeanAndDeviation() throws IOException {
+
+		SpectrumAggregates aggregates = new SpectrumAggregates(file, BINNING);
+		aggregates.update("urn:a", "V1_J1_T", constant(1));
+		aggregates.update("urn:b", "V1_J1_T", constant(2));
+		SpectrumAggregates.Group group = aggregates.update("urn:c", "V1_J1_T", constant(6));
+
+		assertEquals(3, group.getCount());
+		assertEquals(3, group.getMean()[0], 1e-9);
+		assertEquals(Math.sqrt(7), group.getStandardDeviation()[0], 1e-9);
+		assertTrue(Double.isNaN(group.getMean()[9]));
+		assertTrue(Double.isNaN(group.getStandardDeviation()[9]));
+	}
+
+	@Test
+	public void testReimport() throws IOException {
+
+		SpectrumAggregates aggregates = new SpectrumAggregates(file, BINNING);
+		aggregates.update("urn:a", "V1_J1_T", constant(1));
+		aggregates.update("urn:b", "V1_J1_T", constant(2));
+		SpectrumAggregates.Group before = aggregates.update("urn:c", "V1_J1_T", constant(6));
+
+		//the same file again changes nothing
+		SpectrumAggregates.Group again = aggregates.update("urn:c", "V1_J1_T", constant(6));
+		assertEquals(3, again.getCount());
+		assertArrayEquals(before.getMean(), again.getMean(), 1e-9);
+		assertArrayEquals(before.getStandardDeviation(), again.getStandardDeviation(), 1e-9);
+
+		//a changed file replaces its previous contribution
+		SpectrumAggregates.Group changed = aggregates.update("urn:c", "V1_J1_T", constant(3));
+		assertEquals(3, changed.getCount());
+		assertEquals(2, changed.getMean()[0], 1e-9);
+		assertEquals(1, changed.getStandardDeviation()[0], 1e-9);
+		assertEquals(3, aggregates.size());
+	}
+
+	@Test
+	public void testMoveToAnotherGroup() throws IOException {
+
+		SpectrumAggregates aggregates = new SpectrumAggregates(file, BINNING);
+		aggregates.update("urn:a", "V1_J1_T", constant(1));
+		aggregates.update("urn:a", "V1_J2_T", constant(1));
+
+		assertNull(aggregates.get("V1_J1_T"));
+		assertEquals(1, aggregates.get("V1_J2_T").getCount());
+	}
+
+	@Test
+	public void testReload() throws IOException {
+
+		SpectrumAggregates aggregates = new SpectrumAggregates(file, BINNING);
+		aggregates.update("urn:a", "V1_J1_T", constant(1));
+		aggregates.update("urn:b", "V1_J1_T", constant(2));
+		aggregates.update("urn:b", "V1_J1_T", constant(5));
+
+		SpectrumAggregates reloaded = new SpectrumAggregates(file, BINNING);
+		assertEquals(2, reloaded.size());
+		assertArrayEquals(aggregates.get("V1_J1_T").getMean(), reloaded.get("V1_J1_T").getMean(), 1e-9);
+		assertArrayEquals(aggregates.get("V1_J1_T").getStandardDeviation(),
+				reloaded.get("V1_J1_T").getStandardDeviation(), 1e-9);
+	}
+
+	@Test
+	public void testIncompleteRecord() throws IOException {
+
+		SpectrumAggregates aggregates = new SpectrumAggregates(file, BINNING);
+		aggregates.update("urn:a", "V1_J1_T", constant(1));
+		long length = file.length();
+		aggregates.update("urn:b", "V1_J1_T", constant(2));
+
+		//a crash in the middle of the second record
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length + 7);
+		} finally {
+			raf.close();
+		}
+
+		SpectrumAggregates reloaded = new SpectrumAggregates(file, BINNING);
+		assertEquals(1, reloaded.size());
+		assertEquals(length, file.length());
+		reloaded.update("urn:b", "V1_J1_T", constant(2));
+		assertEquals(2, new SpectrumAggregates(file, BINNING).size());
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+
+		SpectrumAggregates aggregates = new SpectrumAggregates(file, BINNING);
+		aggregates.update("urn:a", "V1_J1_T", constant(1));
+		long single = file.length();
+		for (int i = 0; i < 3000; i++) {
+			aggregates.update("urn:b", "V1_J1_T", constant(i % 7));
+		}
+
+		//the log never holds more than the compaction threshold of records
+		assertTrue(file.length() < 1100 * (single - 28));
+		SpectrumAggregates reloaded = new SpectrumAggregates(file, BINNING);
+		assertEquals(2, reloaded.size());
+		assertEquals((1 + 2999 % 7) / 2.0, reloaded.get("V1_J1_T").getMean()[0], 1e-6);
+	}
+
+	@Test
+	public void testReimportAfterCompactionAndReload() throws IOException {
+
+		SpectrumAggregates aggregates = new SpectrumAggregates(file, BINNING);
+		aggregates.update("urn:a", "V1_J1_T", constant(1));
+		for (int i = 0; i < 3000; i++) {
+			aggregates.update("urn:b", "V1_J1_T", constant(i % 7));
+		}
+
+		//the previous contributions are read back from the compacted log
+		aggregates.update("urn:a", "V1_J1_T", constant(3));
+		assertEquals((3 + 2999 % 7) / 2.0, aggregates.get("V1_J1_T").getMean()[0], 1e-6);
+
+		SpectrumAggregates reloaded = new SpectrumAggregates(file, BINNING);
+		SpectrumAggregates.Group group = reloaded.update("urn:b", "V1_J1_T", constant(5));
+		assertEquals(2, group.getCount());
+		assertEquals(4, group.getMean()[0], 1e-6);
+		assertEquals(Math.sqrt(2), group.getStandardDeviation()[0], 1e-6);
+	}
+
+	@Test
+	public void testLastUpdated() throws IOException {
+
+		SpectrumAggregates aggregates = new SpectrumAggregates(file, BINNING);
+		long before = System.currentTimeMillis();
+		SpectrumAggregates.Group group = aggregates.update("urn:a", "V1_J1_T", constant(1));
+		assertTrue(group.getLastUpdated() >= before);
+		assertEquals(group.getLastUpdated(), new SpectrumAggregates(file, BINNING).get("V1_J1_T").getLastUpdated());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testOtherGrid() throws IOException {
+
+		new SpectrumAggregates(file, BINNING).update("urn:a", "V1_J1_T", constant(1));
+		new SpectrumAggregates(file, new SpectrumBinning(0, 20, 10));
+	}
+
+}
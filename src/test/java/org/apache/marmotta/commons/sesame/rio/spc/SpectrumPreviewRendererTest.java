@@ -0,0 +1,78 @@
+package org.apache.marmotta.commons.sesame.rio.spc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests of {@link SpectrumPreviewRenderer} </br>
+ *
+ */
+public class SpectrumPreviewRendererTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() {
+		directory = Files.createTempDir();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	private static RamanSpectrum spectrum() {
+		double[] x = new double[2000];
+		double[] y = new double[2000];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = 400 + i;
+			y[i] = Math.sin(i / 50.0);
+		}
+		return new RamanSpectrum(x, y);
+	}
+
+	@Test
+	public void testRenderAndCache() throws IOException, InterruptedException {
+
+		SpectrumPreviewRenderer renderer = new SpectrumPreviewRenderer(directory);
+		RamanSpectrum spectrum = spectrum();
+		String hash = SpectrumPreviewRenderer.contentHash(spectrum);
+
+		File preview = renderer.submit(spectrum, hash);
+		assertNotNull(preview);
+		assertEquals(hash + ".png", preview.getName());
+		for (int i = 0; i < 100 && !preview.exists(); i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(preview.exists());
+		assertEquals(SpectrumPreviewRenderer.WIDTH, ImageIO.read(preview).getWidth());
+
+		//a cached preview is returned without rendering
+		assertEquals(preview, renderer.submit(spectrum, hash));
+	}
+
+	@Test
+	public void testUnusableDirectory() throws IOException {
+
+		File notADirectory = new File(directory, "file");
+		Files.touch(notADirectory);
+
+		RamanSpectrum spectrum = spectrum();
+		assertNull(new SpectrumPreviewRenderer(notADirectory).submit(spectrum, SpectrumPreviewRenderer.contentHash(spectrum)));
+	}
+
+}